@@ -0,0 +1,555 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable experimental and theoretical response of an RLC circuit sampled at the
+ * same times, stored as parallel primitive columns. The chart json is encoded once,
+ * plain and gzipped, when the dataset is created. Times must be in ascending order.
+ */
+public final class ChartDataset{
+  // Most downsampled charts kept per dataset.
+  private static final int MAX_CACHED_VIEWS = 64;
+
+  // Magic bytes opening the binary chart format.
+  private static final byte[] BINARY_MAGIC = {'S', 'P', 'S', 'C'};
+
+  // Names of the columns in the binary chart format, in order.
+  private static final String[] BINARY_SERIES = {"time", "theory", "experimental", "residual"};
+
+  // Chart json along with its gzipped copy, optional binary form and entity tag.
+  public static final class EncodedChart{
+    private final byte[] json;
+    private final byte[] gzippedJson;
+    private final byte[] binary;
+    private final String etag;
+
+    private EncodedChart(byte[] json, byte[] binary){
+      this.json = json;
+      this.gzippedJson = gzip(json);
+      this.binary = binary;
+      CRC32 checksum = new CRC32();
+      checksum.update(json);
+      this.etag = json.length + "-" + Long.toHexString(checksum.getValue());
+    }
+
+    // Wraps json derived from a dataset, such as a fit, so it can be served like a chart.
+    public static EncodedChart of(byte[] json){
+      return new EncodedChart(json, null);
+    }
+
+    // Returns the encoded json. The array must not be changed.
+    public byte[] getJson(){
+      return json;
+    }
+
+    // Returns the gzipped chart json. The array must not be changed.
+    public byte[] getGzippedJson(){
+      return gzippedJson;
+    }
+
+    /**
+     * Returns the chart in the binary columnar format, or null if it only has a json form.
+     * The array must not be changed.
+     */
+    public byte[] getBinary(){
+      return binary;
+    }
+
+    private long getMemoryUsage(){
+      return json.length + gzippedJson.length + (binary == null ? 0 : binary.length);
+    }
+
+    // Returns a strong entity tag that changes whenever the encoded chart does.
+    public String getETag(){
+      return etag;
+    }
+  }
+
+  private final double[] times;
+  private final double[] theory;
+  private final double[] experimental;
+  private final double[] residuals;
+  private final ResidualStats stats = new ResidualStats();
+  private final long experimentalHash;
+  private final EncodedChart encoded;
+
+  // Residual statistics as json, with chi-squared for a measurement uncertainty of 1.
+  private final EncodedChart encodedStats;
+
+  // Magnitude spectrum of the experimental series, computed when it is first requested.
+  private volatile EncodedChart spectrum;
+
+  // Downsampled charts by index range and number of points, least recently used first.
+  private final Map<String, EncodedChart> views = new LinkedHashMap<String, EncodedChart>(16, 0.75f, true){
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, EncodedChart> eldest){
+      return size() > MAX_CACHED_VIEWS;
+    }
+  };
+
+  // Told whenever a cached chart is added, so the owner can check its memory budget.
+  private volatile Runnable growthListener;
+
+  /**
+   * Creates a dataset from columns of equal length. The arrays are owned by the dataset
+   * afterwards and must not be changed by the caller.
+   */
+  public ChartDataset(double[] times, double[] theory, double[] experimental){
+    if(times.length != theory.length || times.length != experimental.length){
+      throw new IllegalArgumentException("columns must have the same length");
+    }
+    this.times = times;
+    this.theory = theory;
+    this.experimental = experimental;
+    this.residuals = new double[times.length];
+    for(int i = 0; i < times.length; i++){
+      residuals[i] = experimental[i] - theory[i];
+      stats.add(residuals[i]);
+    }
+    long hash = 1125899906842597L;
+    for(int i = 0; i < times.length; i++){
+      hash = 31 * (31 * hash + Double.doubleToLongBits(times[i])) + Double.doubleToLongBits(experimental[i]);
+    }
+    this.experimentalHash = hash;
+    int[] everyIndex = range(0, times.length);
+    this.encoded = new EncodedChart(encodeJson(everyIndex), encodeBinary(everyIndex));
+    this.encodedStats = EncodedChart.of(stats.encodeJson(1));
+  }
+
+  /**
+   * Creates a dataset on the experimental sample times, with the theoretical response
+   * linearly interpolated wherever its samples don't line up with the experimental ones.
+   * Experimental samples outside the theoretical time range are dropped rather than
+   * extrapolated. Both series must be in ascending order of time; they are merged in a
+   * single pass.
+   */
+  public static ChartDataset align(double[] experimentalTimes, double[] experimental,
+      double[] theoryTimes, double[] theory){
+    checkAscending(experimentalTimes);
+    checkAscending(theoryTimes);
+    int count = Math.min(experimentalTimes.length, experimental.length);
+    int theoryCount = Math.min(theoryTimes.length, theory.length);
+
+    double[] alignedTimes = new double[count];
+    double[] alignedTheory = new double[count];
+    double[] alignedExperimental = new double[count];
+    int size = 0;
+    int next = 0;
+    for(int i = 0; i < count; i++){
+      double t = experimentalTimes[i];
+      if(theoryCount == 0 || t < theoryTimes[0] || t > theoryTimes[theoryCount - 1]){
+        continue;
+      }
+      // Advancing to the last theoretical sample at or before t.
+      while(next + 1 < theoryCount && theoryTimes[next + 1] <= t){
+        next++;
+      }
+      double value = theory[next];
+      if(theoryTimes[next] < t){
+        double weight = (t - theoryTimes[next]) / (theoryTimes[next + 1] - theoryTimes[next]);
+        value += weight * (theory[next + 1] - theory[next]);
+      }
+      alignedTimes[size] = t;
+      alignedTheory[size] = value;
+      alignedExperimental[size] = experimental[i];
+      size++;
+    }
+    return new ChartDataset(Arrays.copyOf(alignedTimes, size), Arrays.copyOf(alignedTheory, size),
+        Arrays.copyOf(alignedExperimental, size));
+  }
+
+  /**
+   * Creates a dataset whose theoretical response is the RLC transient model fitted to the
+   * experimental series, for measurements that come without a theoretical curve. Times
+   * must be in ascending order.
+   */
+  public static ChartDataset fitted(double[] times, double[] experimental){
+    checkAscending(times);
+    int count = Math.min(times.length, experimental.length);
+    RlcFit fit = RlcFit.fit(times, experimental, count);
+    double[] theory = new double[count];
+    for(int i = 0; i < count; i++){
+      theory[i] = fit.evaluate(times[i]);
+    }
+    return new ChartDataset(Arrays.copyOf(times, count), theory, Arrays.copyOf(experimental, count));
+  }
+
+  private static void checkAscending(double[] times){
+    for(int i = 1; i < times.length; i++){
+      if(!(times[i - 1] <= times[i])){
+        throw new IllegalArgumentException("times must be in ascending order");
+      }
+    }
+  }
+
+  public int size(){
+    return times.length;
+  }
+
+  public double getTime(int index){
+    return times[index];
+  }
+
+  public double getTheory(int index){
+    return theory[index];
+  }
+
+  public double getExperimental(int index){
+    return experimental[index];
+  }
+
+  public double getResidual(int index){
+    return residuals[index];
+  }
+
+  // Returns a hash of the experimental series, equal for datasets with the same measurements.
+  public long getExperimentalHash(){
+    return experimentalHash;
+  }
+
+  // Returns statistics of the residuals, gathered when the dataset was created.
+  public ResidualStats getStats(){
+    return stats;
+  }
+
+  // Returns the residual statistics as json for an uncertainty of 1, encoded at creation.
+  public EncodedChart getEncodedStats(){
+    return encodedStats;
+  }
+
+  /**
+   * Returns the one-sided magnitude spectrum of the experimental series as json, with
+   * frequencies in cycles per unit of time. The series is taken to be evenly sampled,
+   * has its mean removed and is zero padded to a power of two.
+   */
+  public EncodedChart getSpectrum(){
+    EncodedChart spectrum = this.spectrum;
+    if(spectrum == null){
+      spectrum = EncodedChart.of(encodeSpectrum());
+      this.spectrum = spectrum;
+      notifyGrowth();
+    }
+    return spectrum;
+  }
+
+  // Fits the RLC transient model to the experimental series.
+  public RlcFit fitRlc(){
+    return RlcFit.fit(times, experimental, times.length);
+  }
+
+  /**
+   * Returns the approximate number of bytes held by the dataset, including its encoded
+   * charts and cached downsampled views.
+   */
+  public long getMemoryUsage(){
+    long bytes = 4L * Double.BYTES * times.length + encoded.getMemoryUsage()
+        + encodedStats.getMemoryUsage();
+    EncodedChart spectrum = this.spectrum;
+    if(spectrum != null){
+      bytes += spectrum.getMemoryUsage();
+    }
+    synchronized(views){
+      for(EncodedChart view : views.values()){
+        bytes += view.getMemoryUsage();
+      }
+    }
+    return bytes;
+  }
+
+  // Returns the chart of every point in the dataset.
+  public EncodedChart getEncoded(){
+    return encoded;
+  }
+
+  /**
+   * Returns the chart of the points with times from from to to inclusive, reduced to at
+   * most maxPoints points that keep the shape of the experimental response. Charts are
+   * cached by the index range they cover, so equivalent time ranges share an entry.
+   */
+  public EncodedChart getDownsampled(int maxPoints, double from, double to){
+    if(maxPoints <= 0){
+      throw new IllegalArgumentException("maxPoints must be positive");
+    }
+    int start = lowerBound(from);
+    int end = upperBound(to);
+    if(start >= end){
+      start = end = 0;
+    }
+    if(start == 0 && end == times.length && maxPoints >= times.length){
+      return encoded;
+    }
+
+    String key = start + ":" + end + ":" + Math.min(maxPoints, end - start);
+    synchronized(views){
+      EncodedChart view = views.get(key);
+      if(view != null){
+        return view;
+      }
+    }
+    int[] picked = largestTriangleThreeBuckets(start, end, maxPoints);
+    EncodedChart view = new EncodedChart(encodeJson(picked), encodeBinary(picked));
+    synchronized(views){
+      views.put(key, view);
+    }
+    notifyGrowth();
+    return view;
+  }
+
+  // Sets the listener told when cached charts are added, or removes it if listener is null.
+  void setGrowthListener(Runnable listener){
+    growthListener = listener;
+  }
+
+  // Drops the cached spectrum and downsampled charts, which are rebuilt when next requested.
+  void clearCachedCharts(){
+    spectrum = null;
+    synchronized(views){
+      views.clear();
+    }
+  }
+
+  private void notifyGrowth(){
+    Runnable listener = growthListener;
+    if(listener != null){
+      listener.run();
+    }
+  }
+
+  // Returns the index of the first point at or after time t.
+  public int lowerBound(double t){
+    int low = 0;
+    int high = times.length;
+    while(low < high){
+      int middle = (low + high) >>> 1;
+      if(times[middle] < t){
+        low = middle + 1;
+      }else{
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  // Returns the index of the first point after time t.
+  public int upperBound(double t){
+    int low = 0;
+    int high = times.length;
+    while(low < high){
+      int middle = (low + high) >>> 1;
+      if(times[middle] <= t){
+        low = middle + 1;
+      }else{
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Picks at most threshold of the points from index start up to end with the Largest
+   * Triangle Three Buckets algorithm over the experimental response. The first and last
+   * points are always kept; every bucket in between contributes the point forming the
+   * largest triangle with the previously picked point and the average of the next bucket.
+   */
+  int[] largestTriangleThreeBuckets(int start, int end, int threshold){
+    int count = end - start;
+    if(threshold >= count){
+      return range(start, end);
+    }
+    if(threshold < 3){
+      return threshold == 1 ? new int[] {start} : new int[] {start, end - 1};
+    }
+
+    int[] picked = new int[threshold];
+    picked[0] = start;
+    double bucketSize = (double)(count - 2) / (threshold - 2);
+    int previous = start;
+    for(int bucket = 0; bucket < threshold - 2; bucket++){
+      int bucketStart = start + 1 + (int)(bucket * bucketSize);
+      int bucketEnd = start + 1 + (int)((bucket + 1) * bucketSize);
+
+      // Averaging the next bucket, which is just the last point for the final bucket.
+      int nextStart = bucketEnd;
+      int nextEnd = Math.min(start + 1 + (int)((bucket + 2) * bucketSize), end);
+      if(nextStart >= nextEnd){
+        nextStart = end - 1;
+        nextEnd = end;
+      }
+      double averageTime = 0;
+      double averageValue = 0;
+      for(int i = nextStart; i < nextEnd; i++){
+        averageTime += times[i];
+        averageValue += experimental[i];
+      }
+      averageTime /= nextEnd - nextStart;
+      averageValue /= nextEnd - nextStart;
+
+      double largestArea = -1;
+      int largest = bucketStart;
+      for(int i = bucketStart; i < bucketEnd; i++){
+        double area = Math.abs((times[previous] - averageTime) * (experimental[i] - experimental[previous])
+            - (times[previous] - times[i]) * (averageValue - experimental[previous]));
+        if(area > largestArea){
+          largestArea = area;
+          largest = i;
+        }
+      }
+      picked[bucket + 1] = largest;
+      previous = largest;
+    }
+    picked[threshold - 1] = end - 1;
+    return picked;
+  }
+
+  static int[] range(int start, int end){
+    int[] indices = new int[end - start];
+    for(int i = 0; i < indices.length; i++){
+      indices[i] = start + i;
+    }
+    return indices;
+  }
+
+  /**
+   * Encodes the points at the given indices as the chart json: an array holding the
+   * theoretical, experimental and residual series, each an object from time to value.
+   */
+  byte[] encodeJson(int[] indices){
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try(JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(encoded, StandardCharsets.UTF_8))){
+      jsonWriter.beginArray();
+      writeSeries(jsonWriter, theory, indices);
+      writeSeries(jsonWriter, experimental, indices);
+      writeSeries(jsonWriter, residuals, indices);
+      jsonWriter.endArray();
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return encoded.toByteArray();
+  }
+
+  /**
+   * Encodes the points at the given indices in the binary columnar format: the ASCII magic
+   * SPSC, the number of series as a little-endian int32 and, for each series, the length of
+   * its UTF-8 name, the name and its number of values. The header is zero padded to a
+   * multiple of eight bytes and followed by the time, theory, experimental and residual
+   * columns as little-endian float64 values.
+   */
+  byte[] encodeBinary(int[] indices){
+    int headerLength = BINARY_MAGIC.length + Integer.BYTES;
+    byte[][] names = new byte[BINARY_SERIES.length][];
+    for(int i = 0; i < names.length; i++){
+      names[i] = BINARY_SERIES[i].getBytes(StandardCharsets.UTF_8);
+      headerLength += 2 * Integer.BYTES + names[i].length;
+    }
+    headerLength = (headerLength + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+
+    ByteBuffer buffer = ByteBuffer.allocate(headerLength + BINARY_SERIES.length * indices.length * Double.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(BINARY_MAGIC).putInt(names.length);
+    for(byte[] name : names){
+      buffer.putInt(name.length).put(name).putInt(indices.length);
+    }
+    buffer.position(headerLength);
+    DoubleBuffer columns = buffer.asDoubleBuffer();
+    for(double[] column : new double[][] {times, theory, experimental, residuals}){
+      if(indices.length == column.length){
+        // Copying every value in bulk.
+        columns.put(column);
+      }else{
+        for(int index : indices){
+          columns.put(column[index]);
+        }
+      }
+    }
+    return buffer.array();
+  }
+
+  // Encodes the spectrum as {sampleInterval, size, magnitudes}, magnitudes mapping frequency to amplitude.
+  private byte[] encodeSpectrum(){
+    int count = times.length;
+    int size = Integer.highestOneBit(Math.max(count, 1));
+    if(size < count){
+      size <<= 1;
+    }
+    double[] real = new double[size];
+    double[] imaginary = new double[size];
+    double mean = 0;
+    for(int i = 0; i < count; i++){
+      mean += experimental[i];
+    }
+    mean /= Math.max(count, 1);
+    for(int i = 0; i < count; i++){
+      real[i] = experimental[i] - mean;
+    }
+    Fft.transform(real, imaginary);
+
+    double sampleInterval = count > 1 ? (times[count - 1] - times[0]) / (count - 1) : 0;
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try(JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(encoded, StandardCharsets.UTF_8))){
+      jsonWriter.beginObject();
+      jsonWriter.name("sampleInterval").value(sampleInterval);
+      jsonWriter.name("size").value(size);
+      jsonWriter.name("magnitudes").beginObject();
+      if(sampleInterval > 0){
+        for(int k = 0; k <= size / 2; k++){
+          // Scaling so a sinusoid's peak reads as its amplitude.
+          double magnitude = Math.hypot(real[k], imaginary[k]) * (k == 0 || k == size / 2 ? 1 : 2) / count;
+          jsonWriter.name(Double.toString(k / (size * sampleInterval))).value(magnitude);
+        }
+      }
+      jsonWriter.endObject();
+      jsonWriter.endObject();
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return encoded.toByteArray();
+  }
+
+  private void writeSeries(JsonWriter jsonWriter, double[] values, int[] indices) throws IOException {
+    jsonWriter.beginObject();
+    for(int index : indices){
+      jsonWriter.name(Double.toString(times[index])).value(values[index]);
+    }
+    jsonWriter.endObject();
+  }
+
+  private static byte[] gzip(byte[] data){
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try(GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)){
+      gzipStream.write(data);
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return compressed.toByteArray();
+  }
+}
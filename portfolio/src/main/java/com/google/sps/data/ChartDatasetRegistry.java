@@ -0,0 +1,182 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Chart datasets by name, loaded the first time they are requested and kept in
+ * memory until the loaded datasets use more than the memory budget, at which point
+ * the least recently used ones are dropped. The budget is checked again whenever a
+ * dataset caches another chart, since downsampled views and spectra keep growing after
+ * the load. Concurrent requests for a dataset that isn't loaded yet share a single load.
+ */
+public final class ChartDatasetRegistry{
+  // Reads a dataset, returning null if there is no dataset with that name.
+  public interface Loader{
+    ChartDataset load(String name) throws IOException;
+  }
+
+  private final Loader loader;
+  private final long maxBytes;
+
+  // Loaded datasets, least recently used first.
+  private final LinkedHashMap<String, ChartDataset> datasets = new LinkedHashMap<>(16, 0.75f, true);
+
+  // Loads in progress by dataset name.
+  private final Map<String, FutureTask<ChartDataset>> loading = new HashMap<>();
+
+  public ChartDatasetRegistry(Loader loader, long maxBytes){
+    if(maxBytes <= 0){
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    this.loader = loader;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the named dataset, loading it if it isn't in memory, or null if there is
+   * no such dataset. Missing datasets aren't remembered, so they can be added later.
+   */
+  public ChartDataset get(String name) throws IOException {
+    FutureTask<ChartDataset> load;
+    boolean loadHere = false;
+    synchronized(this){
+      ChartDataset dataset = datasets.get(name);
+      if(dataset != null){
+        return dataset;
+      }
+      load = loading.get(name);
+      if(load == null){
+        load = new FutureTask<>(() -> loader.load(name));
+        loading.put(name, load);
+        loadHere = true;
+      }
+    }
+
+    if(loadHere){
+      load.run();
+      synchronized(this){
+        loading.remove(name);
+        ChartDataset dataset = getResult(load, false);
+        if(dataset != null){
+          put(name, dataset);
+        }
+      }
+    }
+    return getResult(load, true);
+  }
+
+  /**
+   * Loads a dataset again and swaps it in for the one in memory, so requests see either
+   * the old or the new dataset but never a partly built one. Does nothing if the dataset
+   * isn't in memory, and drops it if it no longer exists. The old dataset is kept if the
+   * new one can't be read.
+   */
+  public void reload(String name) throws IOException {
+    synchronized(this){
+      if(!datasets.containsKey(name)){
+        return;
+      }
+    }
+    ChartDataset dataset = loader.load(name);
+    synchronized(this){
+      if(dataset == null){
+        release(datasets.remove(name));
+      }else if(datasets.containsKey(name)){
+        put(name, dataset);
+      }
+    }
+  }
+
+  // Names of the datasets in memory.
+  public synchronized Set<String> getLoadedNames(){
+    return new HashSet<>(datasets.keySet());
+  }
+
+  // Number of datasets in memory.
+  public synchronized int getSize(){
+    return datasets.size();
+  }
+
+  // Approximate number of bytes used by the datasets in memory.
+  public synchronized long getMemoryUsage(){
+    long bytes = 0;
+    for(ChartDataset dataset : datasets.values()){
+      bytes += dataset.getMemoryUsage();
+    }
+    return bytes;
+  }
+
+  private void put(String name, ChartDataset dataset){
+    dataset.setGrowthListener(this::evict);
+    release(datasets.put(name, dataset));
+    evict();
+  }
+
+  /**
+   * Drops the least recently used datasets until the rest fit the budget, always keeping
+   * the newest. If the newest alone is over budget, its cached charts are dropped instead.
+   */
+  private synchronized void evict(){
+    long bytes = getMemoryUsage();
+    Iterator<ChartDataset> datasetIterator = datasets.values().iterator();
+    while(bytes > maxBytes && datasets.size() > 1){
+      ChartDataset dataset = datasetIterator.next();
+      bytes -= dataset.getMemoryUsage();
+      datasetIterator.remove();
+      release(dataset);
+    }
+    if(bytes > maxBytes && datasetIterator.hasNext()){
+      datasetIterator.next().clearCachedCharts();
+    }
+  }
+
+  // Stops a dataset that left the registry from checking the budget.
+  private static void release(ChartDataset dataset){
+    if(dataset != null){
+      dataset.setGrowthListener(null);
+    }
+  }
+
+  // Returns the outcome of a finished load, or null if it failed and rethrow is false.
+  private static ChartDataset getResult(FutureTask<ChartDataset> load, boolean rethrow) throws IOException {
+    try{
+      return load.get();
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading a chart dataset", e);
+    }catch(ExecutionException e){
+      if(!rethrow){
+        return null;
+      }
+      if(e.getCause() instanceof IOException){
+        throw (IOException)e.getCause();
+      }
+      if(e.getCause() instanceof RuntimeException){
+        throw (RuntimeException)e.getCause();
+      }
+      throw new IOException("Could not load a chart dataset", e.getCause());
+    }
+  }
+}
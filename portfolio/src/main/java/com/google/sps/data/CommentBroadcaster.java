@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.AsyncContext;
+
+/**
+ * Fans comment changes out to every client connected to the comment stream as
+ * server-sent events. Each event is encoded once and written to all clients;
+ * clients whose connection fails are dropped.
+ */
+public final class CommentBroadcaster{
+  private static final CommentBroadcaster INSTANCE = new CommentBroadcaster();
+
+  private final Set<AsyncContext> clients = ConcurrentHashMap.newKeySet();
+
+  // Returns the broadcaster shared by all comment servlets.
+  public static CommentBroadcaster getInstance(){
+    return INSTANCE;
+  }
+
+  // Starts sending events to a client whose response is already set up for streaming.
+  public void register(AsyncContext client){
+    clients.add(client);
+  }
+
+  public void unregister(AsyncContext client){
+    clients.remove(client);
+  }
+
+  public int getClientCount(){
+    return clients.size();
+  }
+
+  // Tells every client that a comment was posted.
+  public void commentAdded(Entity commentEntity){
+    broadcast("comment", CommentJson.encode(commentEntity));
+  }
+
+  // Tells every client that a comment was deleted.
+  public void commentDeleted(long id){
+    broadcast("delete", "{\"id\":" + id + "}");
+  }
+
+  // Tells every client that all comments were deleted.
+  public void commentsCleared(){
+    broadcast("clear", "{}");
+  }
+
+  private void broadcast(String eventName, String data){
+    if(clients.isEmpty()){
+      return;
+    }
+    String event = "event: " + eventName + "\ndata: " + data + "\n\n";
+    for(AsyncContext client : clients){
+      // Events posted from different request threads mustn't interleave.
+      synchronized(client){
+        try{
+          PrintWriter writer = client.getResponse().getWriter();
+          writer.write(event);
+          writer.flush();
+          if(writer.checkError()){
+            throw new IOException("Comment stream client disconnected");
+          }
+        }catch(IOException | IllegalStateException e){
+          clients.remove(client);
+          try{
+            client.complete();
+          }catch(IllegalStateException alreadyCompleted){
+            // The container already finished this response.
+          }
+        }
+      }
+    }
+  }
+}
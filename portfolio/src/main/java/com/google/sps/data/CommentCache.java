@@ -0,0 +1,283 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of the newest comment entities, kept newest first.
+ * Servlets that write comments update or invalidate it so reads of the first
+ * page of comments rarely need to query the datastore. Each instance has its
+ * own cache, so reads check the shared comment generation and reload the cache
+ * when comments were changed through another instance. The cache is also
+ * reloaded once it is older than its maximum age, in case memcache lost track.
+ */
+public final class CommentCache{
+  // Capacity used when the sps.commentCache.capacity system property isn't set.
+  private static final int DEFAULT_CAPACITY = 50;
+
+  // Maximum age used when the sps.commentCache.maxAgeMillis system property isn't set.
+  private static final long DEFAULT_MAX_AGE_MILLIS = 60000;
+
+  private static final CommentCache INSTANCE =
+      new CommentCache(Integer.getInteger("sps.commentCache.capacity", DEFAULT_CAPACITY),
+          Long.getLong("sps.commentCache.maxAgeMillis", DEFAULT_MAX_AGE_MILLIS),
+          Long.getLong("sps.commentGeneration.checkMillis", CommentGeneration.DEFAULT_CHECK_MILLIS));
+
+  // A cached comment together with the web safe cursor pointing right after it,
+  // or null if the comment was added to the cache without querying the datastore.
+  public static final class Entry{
+    private final Entity entity;
+    private final String cursor;
+
+    public Entry(Entity entity, String cursor){
+      this.entity = entity;
+      this.cursor = cursor;
+    }
+
+    public Entity getEntity(){
+      return this.entity;
+    }
+
+    public String getCursor(){
+      return this.cursor;
+    }
+
+    private long getTimestamp(){
+      return (long)entity.getProperty("timestamp");
+    }
+  }
+
+  private final int capacity;
+  private final long maxAgeMillis;
+  private final CommentGeneration.Check generationCheck;
+  private final List<Entry> entries = new ArrayList<>();
+  private final Map<Integer, byte[]> encodedPages = new HashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  // Whether the cache has been filled from the datastore since the last invalidation.
+  private boolean loaded = false;
+
+  // Whether the cache holds every comment in the datastore.
+  private boolean complete = false;
+
+  // Incremented on every change so loads racing with a write can be discarded.
+  private long generation = 0;
+
+  // Shared comment generation the cache is up to date with, or null if unknown.
+  private Long sharedGeneration = null;
+
+  // When the cache was last filled from the datastore.
+  private long loadedAt = 0;
+
+  /**
+   * Creates a cache of the newest capacity comments that is reloaded after maxAgeMillis,
+   * checking the shared comment generation at most every checkMillis.
+   */
+  public CommentCache(int capacity, long maxAgeMillis, long checkMillis){
+    if(capacity <= 0){
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.maxAgeMillis = maxAgeMillis;
+    this.generationCheck = new CommentGeneration.Check(checkMillis);
+  }
+
+  // Returns the cache shared by all comment servlets.
+  public static CommentCache getInstance(){
+    return INSTANCE;
+  }
+
+  public int getCapacity(){
+    return this.capacity;
+  }
+
+  public long getHits(){
+    return hits.get();
+  }
+
+  public long getMisses(){
+    return misses.get();
+  }
+
+  public synchronized int getSize(){
+    return entries.size();
+  }
+
+  public synchronized long getGeneration(){
+    return generation;
+  }
+
+  /**
+   * Returns the newest pageSize comments, or null if the cache can't answer the
+   * request. The last entry of a full page always carries the cursor of the next
+   * page unless the cache holds every comment. A cache that is out of date is
+   * dropped first, so the caller reloads it.
+   */
+  public List<Entry> getPage(int pageSize){
+    // Reading the shared generation before taking the lock so readers don't queue behind memcache.
+    Long current = generationCheck.poll();
+    synchronized(this){
+      if(loaded && isStale(current)){
+        invalidate();
+      }
+      List<Entry> page = peekPage(pageSize);
+      if(page == null){
+        misses.incrementAndGet();
+      }else{
+        hits.incrementAndGet();
+      }
+      return page;
+    }
+  }
+
+  /**
+   * Whether comments changed through another instance or the cache is too old to trust.
+   * current is the shared generation, or null if it is unknown or wasn't read this time.
+   */
+  private boolean isStale(Long current){
+    if(System.currentTimeMillis() - loadedAt > maxAgeMillis){
+      return true;
+    }
+    return current != null && !current.equals(sharedGeneration);
+  }
+
+  // Same as getPage without counting towards the hit and miss statistics, or checking for changes.
+  public synchronized List<Entry> peekPage(int pageSize){
+    if(!loaded || pageSize > capacity){
+      return null;
+    }
+    if(entries.size() < pageSize){
+      return complete ? new ArrayList<>(entries) : null;
+    }
+    boolean lastComment = complete && entries.size() == pageSize;
+    if(!lastComment && entries.get(pageSize - 1).getCursor() == null){
+      return null;
+    }
+    return new ArrayList<>(entries.subList(0, pageSize));
+  }
+
+  /**
+   * Whether the given page ends with the newest comments' last entry, in which
+   * case there is no next page.
+   */
+  public synchronized boolean isLastPage(List<Entry> page){
+    return complete && page.size() == entries.size();
+  }
+
+  // Returns the json array of the first pageSize comments if it was encoded since the last change.
+  public synchronized byte[] getEncodedPage(int pageSize){
+    return encodedPages.get(pageSize);
+  }
+
+  /**
+   * Keeps the json array of the first pageSize comments so it can be shared by later
+   * requests, unless the cache changed since generation was read.
+   */
+  public synchronized void putEncodedPage(int pageSize, long generation, byte[] encodedPage){
+    if(generation == this.generation && loaded){
+      encodedPages.put(pageSize, encodedPage);
+    }
+  }
+
+  /**
+   * Replaces the cache content with the newest comments read from the datastore,
+   * unless the cache changed since generation was read. complete tells whether
+   * newest contains every comment, and sharedGeneration is the shared comment
+   * generation read before querying them.
+   */
+  public synchronized void load(List<Entry> newest, boolean complete, long generation, Long sharedGeneration){
+    if(generation != this.generation){
+      return;
+    }
+    this.sharedGeneration = sharedGeneration;
+    this.loadedAt = System.currentTimeMillis();
+    encodedPages.clear();
+    entries.clear();
+    entries.addAll(newest.subList(0, Math.min(newest.size(), capacity)));
+    this.complete = complete && newest.size() <= capacity;
+    this.loaded = true;
+  }
+
+  /**
+   * Adds a newly stored comment, keeping entries ordered by timestamp. sharedGeneration
+   * is the shared comment generation produced by storing it, or null if there is none.
+   */
+  public synchronized void add(Entity commentEntity, Long sharedGeneration){
+    encodedPages.clear();
+    generation++;
+    if(!loaded){
+      return;
+    }
+    advanceSharedGeneration(sharedGeneration);
+    Entry entry = new Entry(commentEntity, null);
+    int index = 0;
+    while(index < entries.size() && entries.get(index).getTimestamp() >= entry.getTimestamp()){
+      index++;
+    }
+    if(index == capacity){
+      complete = false;
+      return;
+    }
+    entries.add(index, entry);
+    if(entries.size() > capacity){
+      entries.remove(entries.size() - 1);
+      complete = false;
+    }
+  }
+
+  /**
+   * Removes a deleted comment from the cache. sharedGeneration is the shared comment
+   * generation produced by deleting it.
+   */
+  public synchronized void remove(long id, Long sharedGeneration){
+    encodedPages.clear();
+    generation++;
+    advanceSharedGeneration(sharedGeneration);
+    Iterator<Entry> entryIterator = entries.iterator();
+    while(entryIterator.hasNext()){
+      if(entryIterator.next().getEntity().getKey().getId() == id){
+        entryIterator.remove();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Keeps the cache up to date with a change this instance made and already applied to it,
+   * if nobody else changed anything. changed is the shared generation the change produced.
+   */
+  public synchronized void advanceSharedGeneration(Long changed){
+    if(CommentGeneration.follows(sharedGeneration, changed)){
+      sharedGeneration = changed;
+    }
+  }
+
+  // Drops every cached comment, forcing the next read to query the datastore.
+  public synchronized void invalidate(){
+    encodedPages.clear();
+    generation++;
+    entries.clear();
+    loaded = false;
+    complete = false;
+  }
+}
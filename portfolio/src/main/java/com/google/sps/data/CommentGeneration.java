@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter in memcache that is incremented whenever stored comments are added or
+ * deleted, so instances keeping comments in memory can tell when comments changed
+ * through another instance. Generations are null when memcache can't be reached,
+ * in which case callers have to rely on expiring what they keep.
+ */
+public final class CommentGeneration{
+  private static final String KEY = "sps.commentGeneration";
+
+  // How often readers check the generation when the sps.commentGeneration.checkMillis
+  // system property isn't set.
+  static final long DEFAULT_CHECK_MILLIS = 1000;
+
+  /**
+   * Reads the generation for a reader at most once per interval, so frequent reads don't
+   * each wait on memcache. Only one of the threads asking at the same time does the read.
+   */
+  static final class Check{
+    private final long intervalMillis;
+    private final AtomicLong checkedAt = new AtomicLong();
+
+    Check(long intervalMillis){
+      this.intervalMillis = intervalMillis;
+    }
+
+    // Returns the current generation, or null if it is unknown or was read too recently.
+    Long poll(){
+      long now = System.currentTimeMillis();
+      long last = checkedAt.get();
+      if((last != 0 && now - last < intervalMillis) || !checkedAt.compareAndSet(last, now)){
+        return null;
+      }
+      return get();
+    }
+  }
+
+  private CommentGeneration(){}
+
+  // Returns the current generation, or null if it is unknown.
+  public static Long get(){
+    return increment(0);
+  }
+
+  // Records a change to the stored comments and returns the generation it produced, or null.
+  public static Long increment(){
+    return increment(1);
+  }
+
+  /**
+   * Whether changed is the generation produced by the only change made since seen, so
+   * whoever saw seen and applied that change is still up to date.
+   */
+  public static boolean follows(Long seen, Long changed){
+    return seen != null && changed != null && changed == seen + 1;
+  }
+
+  // Memcache creates the counter at zero if it is missing, for instance after an eviction.
+  private static Long increment(long delta){
+    try{
+      return MemcacheServiceFactory.getMemcacheService().increment(KEY, delta, 0L);
+    }catch(RuntimeException e){
+      System.err.println("Could not read comment generation: " + e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,396 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * In-memory inverted index from the words of each comment to the comments that
+ * contain them. Every posting list is kept newest first, so a query only walks
+ * the shortest list of its words and checks the others, and results come out
+ * in the same order as the comment list. Comments posted, queued or deleted
+ * through this instance are applied as they happen. Each instance has its own
+ * index, so it is rebuilt when the shared comment generation shows that comments
+ * changed through another instance, or once it is older than its maximum age.
+ *
+ * A rebuild reads the stored and queued comments into new postings without holding
+ * the index lock and swaps them in at the end, replaying changes made meanwhile, so
+ * searches keep using the old postings instead of waiting. Rebuilds run on the request
+ * that noticed the index was out of date, or on a background thread if the
+ * sps.commentIndex.backgroundRebuild system property is true, which requires manual or
+ * basic scaling.
+ */
+public final class CommentIndex{
+  // Comments newest first, with ties broken by id so no two comments compare equal.
+  private static final Comparator<Entity> NEWEST_FIRST =
+      Comparator.comparingLong((Entity commentEntity) -> (long)commentEntity.getProperty("timestamp"))
+          .thenComparingLong(commentEntity -> commentEntity.getKey().getId())
+          .reversed();
+
+  private static final int LOAD_CHUNK_SIZE = 500;
+
+  // Maximum age used when the sps.commentIndex.maxAgeMillis system property isn't set.
+  private static final long DEFAULT_MAX_AGE_MILLIS = 300000;
+
+  private static final CommentIndex INSTANCE =
+      new CommentIndex(Long.getLong("sps.commentIndex.maxAgeMillis", DEFAULT_MAX_AGE_MILLIS),
+          Long.getLong("sps.commentGeneration.checkMillis", CommentGeneration.DEFAULT_CHECK_MILLIS),
+          Boolean.getBoolean("sps.commentIndex.backgroundRebuild")
+              ? Executors.newSingleThreadExecutor(ThreadManager.backgroundThreadFactory())
+              : Runnable::run);
+
+  // A page of search results and the cursor of the next one, or null if there isn't one.
+  public static final class SearchPage{
+    private final List<Entity> comments;
+    private final String nextCursor;
+
+    private SearchPage(List<Entity> comments, String nextCursor){
+      this.comments = comments;
+      this.nextCursor = nextCursor;
+    }
+
+    public List<Entity> getComments(){
+      return this.comments;
+    }
+
+    public String getNextCursor(){
+      return this.nextCursor;
+    }
+  }
+
+  // Posting lists and comments by id of one build of the index.
+  private static final class Postings{
+    private final Map<String, NavigableSet<Entity>> byTerm = new HashMap<>();
+    private final Map<Long, Entity> comments = new HashMap<>();
+
+    private void add(Entity commentEntity){
+      remove(commentEntity.getKey().getId());
+      comments.put(commentEntity.getKey().getId(), commentEntity);
+      for(String term : tokenize((String)commentEntity.getProperty("content"))){
+        byTerm.computeIfAbsent(term, key -> new TreeSet<>(NEWEST_FIRST)).add(commentEntity);
+      }
+    }
+
+    private void remove(long id){
+      Entity commentEntity = comments.remove(id);
+      if(commentEntity == null){
+        return;
+      }
+      for(String term : tokenize((String)commentEntity.getProperty("content"))){
+        NavigableSet<Entity> termPostings = byTerm.get(term);
+        termPostings.remove(commentEntity);
+        if(termPostings.isEmpty()){
+          byTerm.remove(term);
+        }
+      }
+    }
+
+    private void clear(){
+      byTerm.clear();
+      comments.clear();
+    }
+  }
+
+  // A change made through this instance, with the shared generation it produced.
+  private static final class Change{
+    private final Consumer<Postings> update;
+    private final Long sharedGeneration;
+
+    private Change(Consumer<Postings> update, Long sharedGeneration){
+      this.update = update;
+      this.sharedGeneration = sharedGeneration;
+    }
+  }
+
+  private final long maxAgeMillis;
+  private final CommentGeneration.Check generationCheck;
+  private final Executor rebuildExecutor;
+
+  // Set while a rebuild is scheduled or running, so only one runs at a time.
+  private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+  private Postings postings = new Postings();
+  private boolean built = false;
+
+  // Changes made while a rebuild reads the comments, replayed on the new postings, or null.
+  private List<Change> changesDuringRebuild = null;
+
+  // Shared comment generation the index is up to date with, or null if unknown.
+  private Long sharedGeneration = null;
+
+  // When the index was last built from the datastore.
+  private long builtAt = 0;
+
+  /**
+   * Creates an index that is rebuilt on rebuildExecutor once older than maxAgeMillis,
+   * checking the shared comment generation at most every checkMillis.
+   */
+  public CommentIndex(long maxAgeMillis, long checkMillis, Executor rebuildExecutor){
+    this.maxAgeMillis = maxAgeMillis;
+    this.generationCheck = new CommentGeneration.Check(checkMillis);
+    this.rebuildExecutor = rebuildExecutor;
+  }
+
+  // Returns the index shared by all comment servlets.
+  public static CommentIndex getInstance(){
+    return INSTANCE;
+  }
+
+  /**
+   * Makes sure the index is built. An index that was never built is built on the calling
+   * thread; one that is out of date is rebuilt on the rebuild executor while searches keep
+   * using it.
+   */
+  public void build(){
+    Long current = generationCheck.poll();
+    boolean wait;
+    synchronized(this){
+      if(built && !isStale(current)){
+        return;
+      }
+      wait = !built;
+    }
+    if(!rebuilding.compareAndSet(false, true)){
+      return;
+    }
+    if(wait){
+      rebuild();
+      return;
+    }
+    try{
+      rebuildExecutor.execute(this::rebuild);
+    }catch(RejectedExecutionException e){
+      rebuilding.set(false);
+      System.err.println("Could not schedule comment search index rebuild: " + e);
+    }
+  }
+
+  /**
+   * Whether comments changed through another instance or the index is too old to trust.
+   * current is the shared generation, or null if it is unknown or wasn't read this time.
+   */
+  private boolean isStale(Long current){
+    if(System.currentTimeMillis() - builtAt > maxAgeMillis){
+      return true;
+    }
+    return current != null && !current.equals(sharedGeneration);
+  }
+
+  // Reads every stored and queued comment into new postings and swaps them in.
+  private void rebuild(){
+    try{
+      Long currentGeneration = CommentGeneration.get();
+      synchronized(this){
+        changesDuringRebuild = new ArrayList<>();
+      }
+      Postings rebuilt = new Postings();
+      DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+      Query commentQuery = new Query("Comment");
+      for(Entity commentEntity : dataStore.prepare(commentQuery).asIterable(FetchOptions.Builder.withChunkSize(LOAD_CHUNK_SIZE))){
+        rebuilt.add(commentEntity);
+      }
+      if(CommentWriteQueue.isEnabled()){
+        for(Entity commentEntity : CommentWriteQueue.getInstance().getPending()){
+          rebuilt.add(commentEntity);
+        }
+      }
+
+      synchronized(this){
+        postings = rebuilt;
+        sharedGeneration = currentGeneration;
+        for(Change change : changesDuringRebuild){
+          change.update.accept(postings);
+          advance(change.sharedGeneration);
+        }
+        changesDuringRebuild = null;
+        built = true;
+        builtAt = System.currentTimeMillis();
+      }
+    }catch(RuntimeException e){
+      System.err.println("Could not build comment search index: " + e);
+      synchronized(this){
+        changesDuringRebuild = null;
+      }
+    }finally{
+      rebuilding.set(false);
+    }
+  }
+
+  public synchronized int getSize(){
+    return postings.comments.size();
+  }
+
+  public synchronized int getTermCount(){
+    return postings.byTerm.size();
+  }
+
+  /**
+   * Adds a new comment to the index. sharedGeneration is the shared comment generation
+   * produced by storing it, or null if there is none.
+   */
+  public void add(Entity commentEntity, Long sharedGeneration){
+    apply(postings -> postings.add(commentEntity), sharedGeneration);
+  }
+
+  /**
+   * Removes a deleted comment from the index. sharedGeneration is the shared comment
+   * generation produced by deleting it.
+   */
+  public void remove(long id, Long sharedGeneration){
+    apply(postings -> postings.remove(id), sharedGeneration);
+  }
+
+  /**
+   * Removes every comment from the index. sharedGeneration is the shared comment
+   * generation produced by deleting them.
+   */
+  public void clear(Long sharedGeneration){
+    apply(Postings::clear, sharedGeneration);
+  }
+
+  /**
+   * Keeps the index up to date with a change this instance made and already applied to it,
+   * if nobody else changed anything. changed is the shared generation the change produced.
+   */
+  public void advanceSharedGeneration(Long changed){
+    apply(postings -> {}, changed);
+  }
+
+  // Applies a change made through this instance, and again after a rebuild that is reading meanwhile.
+  private synchronized void apply(Consumer<Postings> update, Long changed){
+    update.accept(postings);
+    advance(changed);
+    if(changesDuringRebuild != null){
+      changesDuringRebuild.add(new Change(update, changed));
+    }
+  }
+
+  private void advance(Long changed){
+    if(CommentGeneration.follows(sharedGeneration, changed)){
+      sharedGeneration = changed;
+    }
+  }
+
+  /**
+   * Returns the newest comments containing every word of the query, starting after the
+   * given cursor. Throws IllegalArgumentException if the cursor can't be parsed.
+   */
+  public synchronized SearchPage search(String queryText, String cursor, int pageSize){
+    Set<String> terms = tokenize(queryText);
+    List<NavigableSet<Entity>> termPostings = new ArrayList<>();
+    for(String term : terms){
+      NavigableSet<Entity> matches = postings.byTerm.get(term);
+      if(matches == null){
+        return new SearchPage(new ArrayList<>(), null);
+      }
+      termPostings.add(matches);
+    }
+    if(termPostings.isEmpty()){
+      return new SearchPage(new ArrayList<>(), null);
+    }
+
+    // Walking the rarest word's comments and checking the other words against them.
+    termPostings.sort(Comparator.comparingInt(NavigableSet::size));
+    NavigableSet<Entity> candidates = termPostings.get(0);
+    if(cursor != null){
+      candidates = candidates.tailSet(decodeCursor(cursor), false);
+    }
+
+    List<Entity> page = new ArrayList<>();
+    String nextCursor = null;
+    for(Entity candidate : candidates){
+      if(!containsAll(termPostings, candidate)){
+        continue;
+      }
+      if(page.size() == pageSize){
+        nextCursor = encodeCursor(page.get(page.size() - 1));
+        break;
+      }
+      page.add(candidate);
+    }
+    return new SearchPage(page, nextCursor);
+  }
+
+  // Splits text into lower case words made of letters and digits.
+  public static Set<String> tokenize(String text){
+    Set<String> terms = new LinkedHashSet<>();
+    if(text == null){
+      return terms;
+    }
+    StringBuilder term = new StringBuilder();
+    for(int i = 0; i < text.length(); ){
+      int codePoint = text.codePointAt(i);
+      if(Character.isLetterOrDigit(codePoint)){
+        term.appendCodePoint(Character.toLowerCase(codePoint));
+      }else if(term.length() > 0){
+        terms.add(term.toString());
+        term.setLength(0);
+      }
+      i += Character.charCount(codePoint);
+    }
+    if(term.length() > 0){
+      terms.add(term.toString());
+    }
+    return terms;
+  }
+
+  private static boolean containsAll(List<NavigableSet<Entity>> termPostings, Entity candidate){
+    for(int i = 1; i < termPostings.size(); i++){
+      if(!termPostings.get(i).contains(candidate)){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Cursors hold the timestamp and id of the last comment of a page.
+  private static String encodeCursor(Entity commentEntity){
+    String position = commentEntity.getProperty("timestamp") + ":" + commentEntity.getKey().getId();
+    return Base64.getUrlEncoder().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Returns a stand-in comment positioned where the cursor points.
+  private static Entity decodeCursor(String cursor){
+    String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    String[] parts = position.split(":");
+    if(parts.length != 2){
+      throw new IllegalArgumentException("Malformed search cursor");
+    }
+    Entity marker = new Entity("Comment", Long.parseLong(parts[1]));
+    marker.setProperty("timestamp", Long.parseLong(parts[0]));
+    return marker;
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes comment entities as json. The output doesn't depend on who is viewing the
+ * comments, so encoded comments can be shared between requests.
+ */
+public final class CommentJson{
+  // Used only to format upload dates the same way Gson always has.
+  private static final Gson GSON = new Gson();
+
+  private CommentJson(){}
+
+  // Writes a comment entity as a json object.
+  public static void write(JsonWriter jsonWriter, Entity commentEntity) throws IOException {
+    long timestamp = (long)commentEntity.getProperty("timestamp");
+    jsonWriter.beginObject();
+    jsonWriter.name("userEmail").value((String)commentEntity.getProperty("email"));
+    jsonWriter.name("timestamp").value(timestamp);
+    jsonWriter.name("content").value((String)commentEntity.getProperty("content"));
+    jsonWriter.name("uploadDate");
+    GSON.toJson(new Date(timestamp), Date.class, jsonWriter);
+    jsonWriter.name("id").value(commentEntity.getKey().getId());
+    jsonWriter.endObject();
+  }
+
+  // Encodes a single comment entity as a json object.
+  public static String encode(Entity commentEntity){
+    StringWriter encoded = new StringWriter();
+    try{
+      write(new JsonWriter(encoded), commentEntity);
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return encoded.toString();
+  }
+
+  // Encodes comment entities as a UTF-8 json array.
+  public static byte[] encodeArray(List<Entity> commentEntities){
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try(JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(encoded, StandardCharsets.UTF_8))){
+      jsonWriter.beginArray();
+      for(Entity commentEntity : commentEntities){
+        write(jsonWriter, commentEntity);
+      }
+      jsonWriter.endArray();
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return encoded.toByteArray();
+  }
+}
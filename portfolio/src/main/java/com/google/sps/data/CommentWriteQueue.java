@@ -0,0 +1,198 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of accepted comments waiting to be stored. A background thread
+ * writes them to the datastore with multi-entity puts, either once a full batch
+ * is waiting or once the flush interval has passed. Comments get their keys when
+ * they are accepted so they can be shown and deleted before they are stored.
+ *
+ * Write-behind is off unless the sps.writeBehind.enabled system property is true.
+ * The flusher runs on an App Engine background thread, which requires manual or
+ * basic scaling.
+ */
+public final class CommentWriteQueue{
+  private static final int DEFAULT_CAPACITY = 1000;
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final long DEFAULT_FLUSH_MILLIS = 500;
+
+  // Number of comment ids reserved from the datastore at once.
+  private static final int ID_BLOCK_SIZE = 100;
+
+  private static CommentWriteQueue instance;
+
+  private final BlockingQueue<Entity> queue;
+  private final int batchSize;
+  private final long flushMillis;
+
+  // Accepted comments that aren't known to be stored yet, by id.
+  private final Map<Long, Entity> unflushed = new ConcurrentHashMap<>();
+
+  private Iterator<Key> reservedKeys = null;
+
+  CommentWriteQueue(int capacity, int batchSize, long flushMillis){
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.flushMillis = flushMillis;
+  }
+
+  // Whether comments should be queued instead of stored on the request thread.
+  public static boolean isEnabled(){
+    return Boolean.getBoolean("sps.writeBehind.enabled");
+  }
+
+  // Returns the shared queue, starting its flusher the first time it is used.
+  public static synchronized CommentWriteQueue getInstance(){
+    if(instance == null){
+      instance = new CommentWriteQueue(
+          Integer.getInteger("sps.writeBehind.capacity", DEFAULT_CAPACITY),
+          Integer.getInteger("sps.writeBehind.batchSize", DEFAULT_BATCH_SIZE),
+          Long.getLong("sps.writeBehind.flushMillis", DEFAULT_FLUSH_MILLIS));
+      ThreadManager.createBackgroundThread(instance::flushLoop).start();
+    }
+    return instance;
+  }
+
+  // Returns a new complete comment key, reserving ids from the datastore in blocks.
+  public synchronized Key allocateKey(){
+    if(reservedKeys == null || !reservedKeys.hasNext()){
+      DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+      reservedKeys = dataStore.allocateIds("Comment", ID_BLOCK_SIZE).iterator();
+    }
+    return reservedKeys.next();
+  }
+
+  /**
+   * Queues a comment entity with a complete key to be stored. Waits up to timeoutMillis
+   * for room in the queue and returns false if the comment couldn't be queued.
+   */
+  public boolean offer(Entity commentEntity, long timeoutMillis) throws InterruptedException {
+    long id = commentEntity.getKey().getId();
+    unflushed.put(id, commentEntity);
+    if(!queue.offer(commentEntity, timeoutMillis, TimeUnit.MILLISECONDS)){
+      unflushed.remove(id);
+      return false;
+    }
+    return true;
+  }
+
+  // Returns the comments that are accepted but not stored yet, newest first.
+  public List<Entity> getPending(){
+    List<Entity> pending = new ArrayList<>(unflushed.values());
+    pending.sort(Comparator.comparingLong(
+        (Entity commentEntity) -> (long)commentEntity.getProperty("timestamp")).reversed());
+    return pending;
+  }
+
+  public int getSize(){
+    return unflushed.size();
+  }
+
+  // Makes sure a queued comment is never stored, or deleted again if it is being stored.
+  public void cancel(long id){
+    Entity commentEntity = unflushed.remove(id);
+    if(commentEntity != null){
+      queue.remove(commentEntity);
+    }
+  }
+
+  // Cancels every queued comment.
+  public void cancelAll(){
+    unflushed.clear();
+    queue.clear();
+  }
+
+  // Writes queued comments in batches until the thread is interrupted.
+  private void flushLoop(){
+    List<Entity> batch = new ArrayList<>(batchSize);
+    while(!Thread.currentThread().isInterrupted()){
+      try{
+        // A failed batch is retried before any new comment is taken from the queue.
+        if(batch.isEmpty()){
+          fillBatch(batch);
+        }else{
+          Thread.sleep(flushMillis);
+        }
+        if(!batch.isEmpty()){
+          flush(batch);
+        }
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }catch(RuntimeException e){
+        System.err.println("Could not store queued comments: " + e);
+      }
+    }
+  }
+
+  // Waits for a first comment, then for a full batch or the end of the flush interval.
+  void fillBatch(List<Entity> batch) throws InterruptedException {
+    Entity first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+    if(first == null){
+      return;
+    }
+    batch.add(first);
+    long deadline = System.currentTimeMillis() + flushMillis;
+    while(batch.size() < batchSize){
+      long remaining = deadline - System.currentTimeMillis();
+      Entity next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+      if(next == null){
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  /**
+   * Stores a batch with a single put, empties it and removes comments cancelled in the
+   * meantime. Other instances are told about the new comments through the shared generation,
+   * while this instance's cache and index, which already show the comments, move on to the
+   * generation the batch produced. Returns that generation, or null if it is unknown.
+   */
+  Long flush(List<Entity> batch){
+    DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+    dataStore.put(batch);
+
+    List<Key> cancelled = new ArrayList<>();
+    for(Entity commentEntity : batch){
+      if(unflushed.remove(commentEntity.getKey().getId()) == null){
+        cancelled.add(commentEntity.getKey());
+      }
+    }
+    batch.clear();
+    if(!cancelled.isEmpty()){
+      dataStore.delete(cancelled);
+    }
+    Long sharedGeneration = CommentGeneration.increment();
+    CommentCache.getInstance().advanceSharedGeneration(sharedGeneration);
+    CommentIndex.getInstance().advanceSharedGeneration(sharedGeneration);
+    return sharedGeneration;
+  }
+}
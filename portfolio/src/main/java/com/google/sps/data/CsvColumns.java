@@ -0,0 +1,266 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Reads the leading numeric columns of a CSV file into primitive arrays. Numbers are
+ * parsed straight from the bytes without creating a String per cell, files are memory
+ * mapped when they live on disk, and large files are split at line breaks and parsed
+ * on several cores.
+ */
+public final class CsvColumns{
+  // Files smaller than this are parsed on the calling thread.
+  private static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+  // Largest mantissa that converts to a double exactly.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  // Powers of ten that are exact doubles.
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private CsvColumns(){}
+
+  /**
+   * Reads the first columnCount columns of every line of a file, memory mapping it.
+   * Returns one array per column.
+   */
+  public static double[][] read(Path file, int columnCount) throws IOException {
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      if(channel.size() > Integer.MAX_VALUE){
+        throw new IOException("CSV file is too large: " + file);
+      }
+      return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), columnCount);
+    }
+  }
+
+  // Reads the first columnCount columns of every line of a stream.
+  public static double[][] read(InputStream in, int columnCount) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    byte[] chunk = new byte[64 * 1024];
+    int read;
+    while((read = in.read(chunk)) != -1){
+      content.write(chunk, 0, read);
+    }
+    return parse(ByteBuffer.wrap(content.toByteArray()), columnCount);
+  }
+
+  /**
+   * Parses the first columnCount columns of every line in the buffer. Blank lines are
+   * skipped, as is the first line if it isn't numeric, since it is then a header.
+   * Throws IllegalArgumentException if any other line has a malformed or missing cell.
+   */
+  public static double[][] parse(ByteBuffer buffer, int columnCount){
+    int start = buffer.position();
+    int end = buffer.limit();
+    int firstLineEnd = lineEnd(buffer, start, end);
+    if(firstLineEnd > start && !isNumeric(buffer.get(start))){
+      start = Math.min(firstLineEnd + 1, end);
+    }
+
+    // Splitting the buffer into one chunk per core, each ending at a line break.
+    int chunkCount = end - start < PARALLEL_THRESHOLD ? 1 : Runtime.getRuntime().availableProcessors();
+    List<Integer> bounds = new ArrayList<>();
+    bounds.add(start);
+    for(int i = 1; i < chunkCount; i++){
+      int bound = lineEnd(buffer, Math.max(start + (int)((long)(end - start) * i / chunkCount), bounds.get(i - 1)), end);
+      bounds.add(Math.min(bound + 1, end));
+    }
+    bounds.add(end);
+
+    Chunk[] chunks = new Chunk[bounds.size() - 1];
+    IntStream indices = IntStream.range(0, chunks.length);
+    if(chunks.length > 1){
+      indices = indices.parallel();
+    }
+    indices.forEach(i -> chunks[i] = parseChunk(buffer.duplicate(), bounds.get(i), bounds.get(i + 1), columnCount));
+
+    int rowCount = 0;
+    for(Chunk chunk : chunks){
+      rowCount += chunk.rowCount;
+    }
+    double[][] columns = new double[columnCount][rowCount];
+    int offset = 0;
+    for(Chunk chunk : chunks){
+      for(int column = 0; column < columnCount; column++){
+        System.arraycopy(chunk.columns[column], 0, columns[column], offset, chunk.rowCount);
+      }
+      offset += chunk.rowCount;
+    }
+    return columns;
+  }
+
+  // Rows parsed from one part of a file.
+  private static final class Chunk{
+    private double[][] columns;
+    private int rowCount = 0;
+  }
+
+  private static Chunk parseChunk(ByteBuffer buffer, int start, int end, int columnCount){
+    Chunk chunk = new Chunk();
+    chunk.columns = new double[columnCount][Math.max(16, (end - start) / 16)];
+    int position = start;
+    while(position < end){
+      int lineEnd = lineEnd(buffer, position, end);
+      int contentEnd = lineEnd;
+      while(contentEnd > position && isSpace(buffer.get(contentEnd - 1))){
+        contentEnd--;
+      }
+      if(contentEnd > position){
+        if(chunk.rowCount == chunk.columns[0].length){
+          for(int column = 0; column < columnCount; column++){
+            chunk.columns[column] = Arrays.copyOf(chunk.columns[column], 2 * chunk.rowCount);
+          }
+        }
+        int cellStart = position;
+        for(int column = 0; column < columnCount; column++){
+          if(cellStart > contentEnd){
+            throw new IllegalArgumentException("Missing CSV cell at byte " + position);
+          }
+          int cellEnd = cellStart;
+          while(cellEnd < contentEnd && buffer.get(cellEnd) != ','){
+            cellEnd++;
+          }
+          chunk.columns[column][chunk.rowCount] = parseDouble(buffer, cellStart, cellEnd);
+          cellStart = cellEnd + 1;
+        }
+        chunk.rowCount++;
+      }
+      position = lineEnd + 1;
+    }
+    return chunk;
+  }
+
+  /**
+   * Parses a decimal number from the bytes between start and end. Numbers with at most
+   * 15 or so significant digits and a small exponent are converted exactly with a single
+   * multiplication or division; anything else falls back to Double.parseDouble so the
+   * result is always correctly rounded.
+   */
+  static double parseDouble(ByteBuffer buffer, int start, int end){
+    while(start < end && isSpace(buffer.get(start))){
+      start++;
+    }
+    while(end > start && isSpace(buffer.get(end - 1))){
+      end--;
+    }
+    int position = start;
+    boolean negative = false;
+    if(position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')){
+      negative = buffer.get(position) == '-';
+      position++;
+    }
+
+    long mantissa = 0;
+    int exponent = 0;
+    boolean exact = true;
+    boolean seenDigit = false;
+    while(position < end && isDigit(buffer.get(position))){
+      seenDigit = true;
+      if(mantissa < MAX_EXACT_MANTISSA / 10){
+        mantissa = mantissa * 10 + (buffer.get(position) - '0');
+      }else{
+        exact = false;
+      }
+      position++;
+    }
+    if(position < end && buffer.get(position) == '.'){
+      position++;
+      while(position < end && isDigit(buffer.get(position))){
+        seenDigit = true;
+        if(mantissa < MAX_EXACT_MANTISSA / 10){
+          mantissa = mantissa * 10 + (buffer.get(position) - '0');
+          exponent--;
+        }else if(buffer.get(position) != '0'){
+          exact = false;
+        }
+        position++;
+      }
+    }
+    if(seenDigit && position < end && (buffer.get(position) == 'e' || buffer.get(position) == 'E')){
+      position++;
+      boolean negativeExponent = false;
+      if(position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')){
+        negativeExponent = buffer.get(position) == '-';
+        position++;
+      }
+      int explicitExponent = 0;
+      boolean seenExponentDigit = false;
+      while(position < end && isDigit(buffer.get(position))){
+        seenExponentDigit = true;
+        explicitExponent = Math.min(explicitExponent * 10 + (buffer.get(position) - '0'), 10000);
+        position++;
+      }
+      if(!seenExponentDigit){
+        exact = false;
+      }
+      exponent += negativeExponent ? -explicitExponent : explicitExponent;
+    }
+
+    if(exact && seenDigit && position == end && exponent >= -22 && exponent <= 22){
+      double value = mantissa;
+      value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+      return negative ? -value : value;
+    }
+
+    // Too many digits, a large exponent or something unusual like NaN.
+    byte[] cell = new byte[end - start];
+    for(int i = 0; i < cell.length; i++){
+      cell[i] = buffer.get(start + i);
+    }
+    String text = new String(cell, StandardCharsets.US_ASCII);
+    try{
+      return Double.parseDouble(text);
+    }catch(NumberFormatException e){
+      throw new IllegalArgumentException("Malformed CSV number \"" + text + "\" at byte " + start, e);
+    }
+  }
+
+  // Returns the index of the line break ending the line at start, or end if there is none.
+  private static int lineEnd(ByteBuffer buffer, int start, int end){
+    int position = start;
+    while(position < end && buffer.get(position) != '\n'){
+      position++;
+    }
+    return position;
+  }
+
+  private static boolean isNumeric(byte character){
+    return isDigit(character) || character == '-' || character == '+' || character == '.' || isSpace(character);
+  }
+
+  private static boolean isDigit(byte character){
+    return character >= '0' && character <= '9';
+  }
+
+  private static boolean isSpace(byte character){
+    return character == ' ' || character == '\t' || character == '\r';
+  }
+}
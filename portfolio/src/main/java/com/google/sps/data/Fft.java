@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * In-place iterative radix-2 fast Fourier transform.
+ */
+public final class Fft{
+  private Fft(){}
+
+  /**
+   * Replaces the complex series held in real and imaginary with its discrete Fourier
+   * transform. The length must be a power of two.
+   */
+  public static void transform(double[] real, double[] imaginary){
+    int size = real.length;
+    if(imaginary.length != size || Integer.bitCount(size) > 1){
+      throw new IllegalArgumentException("length must be a power of two");
+    }
+
+    // Putting the samples in bit reversed order.
+    for(int i = 1, j = 0; i < size; i++){
+      int bit = size >> 1;
+      for(; (j & bit) != 0; bit >>= 1){
+        j ^= bit;
+      }
+      j ^= bit;
+      if(i < j){
+        double swap = real[i];
+        real[i] = real[j];
+        real[j] = swap;
+        swap = imaginary[i];
+        imaginary[i] = imaginary[j];
+        imaginary[j] = swap;
+      }
+    }
+
+    // Combining pairs of half-length transforms.
+    for(int length = 2; length <= size; length <<= 1){
+      double angle = -2 * Math.PI / length;
+      double stepReal = Math.cos(angle);
+      double stepImaginary = Math.sin(angle);
+      for(int start = 0; start < size; start += length){
+        double twiddleReal = 1;
+        double twiddleImaginary = 0;
+        for(int k = 0; k < length / 2; k++){
+          int even = start + k;
+          int odd = even + length / 2;
+          double oddReal = real[odd] * twiddleReal - imaginary[odd] * twiddleImaginary;
+          double oddImaginary = real[odd] * twiddleImaginary + imaginary[odd] * twiddleReal;
+          real[odd] = real[even] - oddReal;
+          imaginary[odd] = imaginary[even] - oddImaginary;
+          real[even] += oddReal;
+          imaginary[even] += oddImaginary;
+
+          double nextReal = twiddleReal * stepReal - twiddleImaginary * stepImaginary;
+          twiddleImaginary = twiddleReal * stepImaginary + twiddleImaginary * stepReal;
+          twiddleReal = nextReal;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Summary statistics of a residual series, accumulated one value at a time with
+ * Welford's algorithm so they can be gathered in the same pass that computes the
+ * residuals.
+ */
+public final class ResidualStats{
+  private long count = 0;
+  private double mean = 0;
+  private double squaredDeviations = 0;
+  private double sumOfSquares = 0;
+  private double maxError = 0;
+
+  // Adds one residual.
+  void add(double residual){
+    count++;
+    double delta = residual - mean;
+    mean += delta / count;
+    squaredDeviations += delta * (residual - mean);
+    sumOfSquares += residual * residual;
+    maxError = Math.max(maxError, Math.abs(residual));
+  }
+
+  public long getCount(){
+    return count;
+  }
+
+  public double getMean(){
+    return mean;
+  }
+
+  // Returns the population variance of the residuals.
+  public double getVariance(){
+    return count == 0 ? 0 : squaredDeviations / count;
+  }
+
+  // Returns the root mean square of the residuals.
+  public double getRmse(){
+    return count == 0 ? 0 : Math.sqrt(sumOfSquares / count);
+  }
+
+  // Returns the largest absolute residual.
+  public double getMaxError(){
+    return maxError;
+  }
+
+  // Returns the sum of squared residuals divided by the variance of the measurement error.
+  public double getChiSquared(double sigma){
+    return sumOfSquares / (sigma * sigma);
+  }
+
+  // Encodes the statistics as a json object, with chi-squared for measurement uncertainty sigma.
+  public byte[] encodeJson(double sigma){
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try(JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(encoded, StandardCharsets.UTF_8))){
+      jsonWriter.beginObject();
+      jsonWriter.name("count").value(count);
+      jsonWriter.name("rmse").value(getRmse());
+      jsonWriter.name("maxError").value(maxError);
+      jsonWriter.name("mean").value(mean);
+      jsonWriter.name("variance").value(getVariance());
+      jsonWriter.name("sigma").value(sigma);
+      jsonWriter.name("chiSquared").value(getChiSquared(sigma));
+      jsonWriter.endObject();
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return encoded.toByteArray();
+  }
+}
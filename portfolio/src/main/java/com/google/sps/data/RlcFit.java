@@ -0,0 +1,340 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Least squares fit of the transient response of an underdamped series RLC circuit,
+ * v(t) = amplitude * exp(-decayRate * t) * cos(angularFrequency * t + phase) + offset,
+ * found with the Levenberg-Marquardt algorithm. Each iteration accumulates the normal
+ * equations in one pass over the samples, without storing the Jacobian, so a fit only
+ * allocates a few small arrays however long the series is.
+ */
+public final class RlcFit{
+  private static final int PARAMETER_COUNT = 5;
+  private static final int MAX_ITERATIONS = 200;
+  private static final double TOLERANCE = 1e-12;
+
+  // Indices of the parameters in the working arrays.
+  private static final int AMPLITUDE = 0;
+  private static final int DECAY_RATE = 1;
+  private static final int ANGULAR_FREQUENCY = 2;
+  private static final int PHASE = 3;
+  private static final int OFFSET = 4;
+
+  private final double amplitude;
+  private final double decayRate;
+  private final double angularFrequency;
+  private final double phase;
+  private final double offset;
+  private final double rmse;
+  private final int iterations;
+
+  private RlcFit(double[] parameters, double startTime, double rmse, int iterations){
+    // Moving the parameters from time relative to the first sample back to absolute time.
+    double decayRate = parameters[DECAY_RATE];
+    double angularFrequency = parameters[ANGULAR_FREQUENCY];
+    double amplitude = parameters[AMPLITUDE] * Math.exp(decayRate * startTime);
+    double phase = parameters[PHASE] - angularFrequency * startTime;
+
+    // Keeping the amplitude and frequency positive and the phase in (-pi, pi].
+    if(angularFrequency < 0){
+      angularFrequency = -angularFrequency;
+      phase = -phase;
+    }
+    if(amplitude < 0){
+      amplitude = -amplitude;
+      phase += Math.PI;
+    }
+    phase = Math.IEEEremainder(phase, 2 * Math.PI);
+
+    this.amplitude = amplitude;
+    this.decayRate = decayRate;
+    this.angularFrequency = angularFrequency;
+    this.phase = phase;
+    this.offset = parameters[OFFSET];
+    this.rmse = rmse;
+    this.iterations = iterations;
+  }
+
+  /**
+   * Fits the model to the samples, which must be in ascending order of time. Starts
+   * from a guess based on the zero crossings and envelope of the series, trying a few
+   * phases and keeping the best fit.
+   */
+  public static RlcFit fit(double[] times, double[] values, int count){
+    if(count < PARAMETER_COUNT){
+      throw new IllegalArgumentException("at least " + PARAMETER_COUNT + " samples are needed");
+    }
+    double startTime = times[0];
+    double span = Math.max(times[count - 1] - startTime, Double.MIN_NORMAL);
+
+    // The response settles to the mean of its tail.
+    int tailStart = count - Math.max(1, count / 10);
+    double offset = 0;
+    for(int i = tailStart; i < count; i++){
+      offset += values[i];
+    }
+    offset /= count - tailStart;
+
+    // Half a period passes between zero crossings.
+    int crossings = 0;
+    double firstCrossing = 0;
+    double lastCrossing = 0;
+    for(int i = 1; i < count; i++){
+      if((values[i - 1] - offset) * (values[i] - offset) < 0){
+        lastCrossing = times[i];
+        if(crossings++ == 0){
+          firstCrossing = times[i];
+        }
+      }
+    }
+    double angularFrequency = crossings >= 2 && lastCrossing > firstCrossing
+        ? Math.PI * (crossings - 1) / (lastCrossing - firstCrossing) : Math.PI / span;
+
+    // The envelope shrinks from the first quarter of the span to the second.
+    double firstPeak = 0;
+    double secondPeak = 0;
+    for(int i = 0; i < count; i++){
+      double quarter = (times[i] - startTime) / span;
+      double deviation = Math.abs(values[i] - offset);
+      if(quarter < 0.25){
+        firstPeak = Math.max(firstPeak, deviation);
+      }else if(quarter < 0.5){
+        secondPeak = Math.max(secondPeak, deviation);
+      }
+    }
+    double decayRate = firstPeak > 0 && secondPeak > 0 && firstPeak > secondPeak
+        ? Math.log(firstPeak / secondPeak) / (0.25 * span) : 1 / span;
+
+    double[] best = null;
+    double bestCost = Double.POSITIVE_INFINITY;
+    int bestIterations = 0;
+    double[] parameters = new double[PARAMETER_COUNT];
+    Workspace workspace = new Workspace();
+    for(int attempt = 0; attempt < 4; attempt++){
+      parameters[AMPLITUDE] = firstPeak;
+      parameters[DECAY_RATE] = decayRate;
+      parameters[ANGULAR_FREQUENCY] = angularFrequency;
+      parameters[PHASE] = attempt * Math.PI / 2;
+      parameters[OFFSET] = offset;
+      int iterations = levenbergMarquardt(times, values, count, startTime, parameters, workspace);
+      double cost = cost(times, values, count, startTime, parameters);
+      if(cost < bestCost){
+        bestCost = cost;
+        best = parameters.clone();
+        bestIterations = iterations;
+      }
+    }
+    if(best == null){
+      throw new IllegalArgumentException("the series can't be fitted");
+    }
+    return new RlcFit(best, startTime, Math.sqrt(bestCost / count), bestIterations);
+  }
+
+  /**
+   * Fits the model with Levenberg-Marquardt starting from the given amplitude, decay rate,
+   * angular frequency, phase and offset, for times relative to the first sample.
+   */
+  static RlcFit refine(double[] times, double[] values, int count, double[] start){
+    if(count < PARAMETER_COUNT || start.length != PARAMETER_COUNT){
+      throw new IllegalArgumentException("at least " + PARAMETER_COUNT + " samples and parameters are needed");
+    }
+    double[] parameters = start.clone();
+    int iterations = levenbergMarquardt(times, values, count, times[0], parameters, new Workspace());
+    double cost = cost(times, values, count, times[0], parameters);
+    return new RlcFit(parameters, times[0], Math.sqrt(cost / count), iterations);
+  }
+
+  public double getAmplitude(){
+    return amplitude;
+  }
+
+  // Returns the exponential decay rate, R / 2L for a series RLC circuit.
+  public double getDecayRate(){
+    return decayRate;
+  }
+
+  // Returns the damped angular frequency in radians per unit of time.
+  public double getAngularFrequency(){
+    return angularFrequency;
+  }
+
+  public double getPhase(){
+    return phase;
+  }
+
+  public double getOffset(){
+    return offset;
+  }
+
+  // Returns the root mean square of the fit's residuals.
+  public double getRmse(){
+    return rmse;
+  }
+
+  public int getIterations(){
+    return iterations;
+  }
+
+  // Returns the fitted response at time t.
+  public double evaluate(double t){
+    return amplitude * Math.exp(-decayRate * t) * Math.cos(angularFrequency * t + phase) + offset;
+  }
+
+  // Arrays reused by every iteration of a fit.
+  private static final class Workspace{
+    private final double[][] normal = new double[PARAMETER_COUNT][PARAMETER_COUNT];
+    private final double[][] damped = new double[PARAMETER_COUNT][PARAMETER_COUNT];
+    private final double[] gradient = new double[PARAMETER_COUNT];
+    private final double[] step = new double[PARAMETER_COUNT];
+    private final double[] trial = new double[PARAMETER_COUNT];
+    private final double[] derivatives = new double[PARAMETER_COUNT];
+  }
+
+  // Improves the parameters in place and returns the number of iterations taken.
+  private static int levenbergMarquardt(double[] times, double[] values, int count, double startTime,
+      double[] parameters, Workspace workspace){
+    double lambda = 1e-3;
+    double cost = cost(times, values, count, startTime, parameters);
+    int iteration = 0;
+    while(iteration < MAX_ITERATIONS){
+      iteration++;
+      accumulateNormalEquations(times, values, count, startTime, parameters, workspace);
+
+      // Retrying with more damping until the step lowers the cost.
+      boolean improved = false;
+      while(lambda < 1e12){
+        for(int row = 0; row < PARAMETER_COUNT; row++){
+          System.arraycopy(workspace.normal[row], 0, workspace.damped[row], 0, PARAMETER_COUNT);
+          workspace.damped[row][row] += lambda * Math.max(workspace.normal[row][row], 1e-12);
+        }
+        if(solve(workspace.damped, workspace.gradient, workspace.step)){
+          for(int p = 0; p < PARAMETER_COUNT; p++){
+            workspace.trial[p] = parameters[p] + workspace.step[p];
+          }
+          double trialCost = cost(times, values, count, startTime, workspace.trial);
+          if(trialCost < cost){
+            System.arraycopy(workspace.trial, 0, parameters, 0, PARAMETER_COUNT);
+            boolean converged = cost - trialCost <= TOLERANCE * cost;
+            cost = trialCost;
+            lambda = Math.max(lambda / 10, 1e-12);
+            improved = true;
+            if(converged){
+              return iteration;
+            }
+            break;
+          }
+        }
+        lambda *= 10;
+      }
+      if(!improved){
+        return iteration;
+      }
+    }
+    return iteration;
+  }
+
+  // Fills in the Gauss-Newton normal matrix and the gradient of the residuals.
+  private static void accumulateNormalEquations(double[] times, double[] values, int count, double startTime,
+      double[] parameters, Workspace workspace){
+    double[][] normal = workspace.normal;
+    double[] gradient = workspace.gradient;
+    double[] derivatives = workspace.derivatives;
+    for(int row = 0; row < PARAMETER_COUNT; row++){
+      gradient[row] = 0;
+      for(int column = 0; column < PARAMETER_COUNT; column++){
+        normal[row][column] = 0;
+      }
+    }
+    for(int i = 0; i < count; i++){
+      double t = times[i] - startTime;
+      double envelope = Math.exp(-parameters[DECAY_RATE] * t);
+      double angle = parameters[ANGULAR_FREQUENCY] * t + parameters[PHASE];
+      double cosine = Math.cos(angle);
+      double sine = Math.sin(angle);
+      double oscillation = parameters[AMPLITUDE] * envelope;
+      double residual = values[i] - (oscillation * cosine + parameters[OFFSET]);
+
+      derivatives[AMPLITUDE] = envelope * cosine;
+      derivatives[DECAY_RATE] = -t * oscillation * cosine;
+      derivatives[ANGULAR_FREQUENCY] = -t * oscillation * sine;
+      derivatives[PHASE] = -oscillation * sine;
+      derivatives[OFFSET] = 1;
+      for(int row = 0; row < PARAMETER_COUNT; row++){
+        gradient[row] += derivatives[row] * residual;
+        for(int column = 0; column <= row; column++){
+          normal[row][column] += derivatives[row] * derivatives[column];
+        }
+      }
+    }
+    for(int row = 0; row < PARAMETER_COUNT; row++){
+      for(int column = row + 1; column < PARAMETER_COUNT; column++){
+        normal[row][column] = normal[column][row];
+      }
+    }
+  }
+
+  // Returns the sum of squared residuals.
+  private static double cost(double[] times, double[] values, int count, double startTime, double[] parameters){
+    double sum = 0;
+    for(int i = 0; i < count; i++){
+      double t = times[i] - startTime;
+      double residual = values[i] - (parameters[AMPLITUDE] * Math.exp(-parameters[DECAY_RATE] * t)
+          * Math.cos(parameters[ANGULAR_FREQUENCY] * t + parameters[PHASE]) + parameters[OFFSET]);
+      sum += residual * residual;
+    }
+    return Double.isNaN(sum) ? Double.POSITIVE_INFINITY : sum;
+  }
+
+  /**
+   * Solves the symmetric positive definite system matrix * solution = vector with a
+   * Cholesky decomposition done in place. Returns false if the matrix isn't positive
+   * definite.
+   */
+  private static boolean solve(double[][] matrix, double[] vector, double[] solution){
+    int size = vector.length;
+    for(int row = 0; row < size; row++){
+      for(int column = 0; column <= row; column++){
+        double sum = matrix[row][column];
+        for(int k = 0; k < column; k++){
+          sum -= matrix[row][k] * matrix[column][k];
+        }
+        if(row == column){
+          if(!(sum > 0)){
+            return false;
+          }
+          matrix[row][row] = Math.sqrt(sum);
+        }else{
+          matrix[row][column] = sum / matrix[column][column];
+        }
+      }
+    }
+    for(int row = 0; row < size; row++){
+      double sum = vector[row];
+      for(int k = 0; k < row; k++){
+        sum -= matrix[row][k] * solution[k];
+      }
+      solution[row] = sum / matrix[row][row];
+    }
+    for(int row = size - 1; row >= 0; row--){
+      double sum = solution[row];
+      for(int k = row + 1; k < size; k++){
+        sum -= matrix[k][row] * solution[k];
+      }
+      solution[row] = sum / matrix[row][row];
+    }
+    return true;
+  }
+}
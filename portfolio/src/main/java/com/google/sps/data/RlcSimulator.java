@@ -0,0 +1,64 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Fixed step fourth order Runge-Kutta integration of a charged capacitor discharging
+ * through a series resistor and inductor. The state is the capacitor voltage v and the
+ * loop current i, with dv/dt = -i / C and di/dt = (v - R i) / L.
+ */
+public final class RlcSimulator{
+  private RlcSimulator(){}
+
+  /**
+   * Returns the capacitor voltage at times 0, dt, ..., steps * dt, starting from voltage
+   * v0 with no current. Units are ohms, henries, farads, volts and seconds.
+   */
+  public static double[] simulate(double resistance, double inductance, double capacitance,
+      double v0, double dt, int steps){
+    if(!(resistance >= 0) || !(inductance > 0) || !(capacitance > 0) || !(dt > 0) || steps < 0){
+      throw new IllegalArgumentException("R must not be negative and L, C and dt must be positive");
+    }
+    double[] voltages = new double[steps + 1];
+    double v = v0;
+    double i = 0;
+    voltages[0] = v;
+    double halfStep = dt / 2;
+    for(int step = 1; step <= steps; step++){
+      double dv1 = -i / capacitance;
+      double di1 = (v - resistance * i) / inductance;
+
+      double v2 = v + halfStep * dv1;
+      double i2 = i + halfStep * di1;
+      double dv2 = -i2 / capacitance;
+      double di2 = (v2 - resistance * i2) / inductance;
+
+      double v3 = v + halfStep * dv2;
+      double i3 = i + halfStep * di2;
+      double dv3 = -i3 / capacitance;
+      double di3 = (v3 - resistance * i3) / inductance;
+
+      double v4 = v + dt * dv3;
+      double i4 = i + dt * di3;
+      double dv4 = -i4 / capacitance;
+      double di4 = (v4 - resistance * i4) / inductance;
+
+      v += dt / 6 * (dv1 + 2 * dv2 + 2 * dv3 + dv4);
+      i += dt / 6 * (di1 + 2 * di2 + 2 * di3 + di4);
+      voltages[step] = v;
+    }
+    return voltages;
+  }
+}
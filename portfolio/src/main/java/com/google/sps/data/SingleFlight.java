@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent identical requests into one. While a result is being computed
+ * for a key, other callers asking for the same key wait for it and share it instead of
+ * computing it again. Results aren't kept once the computation finishes.
+ */
+public final class SingleFlight<K, V>{
+  // Computes a result, possibly failing with an IOException.
+  public interface Loader<V>{
+    V load() throws IOException;
+  }
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong executions = new AtomicLong();
+  private final AtomicLong collapsed = new AtomicLong();
+
+  /**
+   * Returns the result of the loader for the key, joining a computation for the same key
+   * that is already running if there is one. Failures are passed on to every caller.
+   */
+  public V run(K key, Loader<V> loader) throws IOException {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+    if(existing != null){
+      collapsed.incrementAndGet();
+      return await(existing);
+    }
+
+    executions.incrementAndGet();
+    try{
+      V result = loader.load();
+      flight.complete(result);
+      return result;
+    }catch(IOException | RuntimeException | Error e){
+      flight.completeExceptionally(e);
+      throw e;
+    }finally{
+      inFlight.remove(key, flight);
+    }
+  }
+
+  // Number of times a loader actually ran.
+  public long getExecutions(){
+    return executions.get();
+  }
+
+  // Number of calls that shared another call's result instead of running their loader.
+  public long getCollapsed(){
+    return collapsed.get();
+  }
+
+  // Number of computations running right now.
+  public int getInFlight(){
+    return inFlight.size();
+  }
+
+  private static <V> V await(CompletableFuture<V> flight) throws IOException {
+    try{
+      return flight.get();
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a shared request", e);
+    }catch(ExecutionException e){
+      Throwable cause = e.getCause();
+      if(cause instanceof IOException){
+        throw (IOException)cause;
+      }
+      if(cause instanceof RuntimeException){
+        throw (RuntimeException)cause;
+      }
+      if(cause instanceof Error){
+        throw (Error)cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
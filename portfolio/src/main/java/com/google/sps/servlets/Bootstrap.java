@@ -0,0 +1,132 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.sps.data.ChartDataset;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns everything the page needs on load in one response: the login
+ * status, the first page of comments, how to follow comment changes and the chart data,
+ * which is null if the dataset is missing or can't be loaded. The comment page is read
+ * on a second request thread while the chart is loaded on this one. since is the time to
+ * poll comment changes from, and commentStream tells whether the comment stream can be
+ * used instead.
+ */
+@WebServlet("/bootstrap")
+public class Bootstrap extends HttpServlet{
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    int maxComm;
+    try{
+      maxComm = Integer.parseInt(request.getParameter("maxComments"));
+    }catch(NumberFormatException e){
+      System.err.println("Could not parse maximum number of comments");
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if(maxComm <= 0){
+      System.err.println("Maximum number of comments must be positive");
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    UserService userService = UserServiceFactory.getUserService();
+    String currentUser = userService.isUserLoggedIn() ? userService.getCurrentUser().getEmail() : "";
+    // Taken before reading the comments so no change is missed.
+    long since = System.currentTimeMillis();
+
+    ByteArrayOutputStream commentPage = new ByteArrayOutputStream();
+    FutureTask<Void> commentTask = new FutureTask<>(() -> {
+      DataServlet.writeFirstPage(commentPage, maxComm, currentUser);
+      return null;
+    });
+    ThreadManager.currentRequestThreadFactory().newThread(commentTask).start();
+
+    // The page is still usable without the chart, so it is sent as null if it can't be loaded.
+    ChartDataset dataset = null;
+    try{
+      String name = ChartDatasets.getRequestedName(request);
+      if(name != null){
+        dataset = ChartDatasets.getRegistry(getServletContext()).get(name);
+        if(dataset == null){
+          System.err.println("No chart dataset named " + name);
+        }
+      }
+    }catch(IOException | RuntimeException e){
+      System.err.println("Could not load chart data: " + e);
+    }finally{
+      waitFor(commentTask);
+    }
+
+    Gson gson = new Gson();
+    StringBuilder login = new StringBuilder("{\"login\":{\"userStatus\":");
+    if(currentUser.isEmpty()){
+      login.append("\"False\"}");
+    }else{
+      login.append("\"True\",\"userEmail\":").append(gson.toJson(currentUser)).append('}');
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    response.setHeader("Vary", "Accept-Encoding");
+    boolean gzip = ChartData.accepts(request, "Accept-Encoding", "gzip");
+    if(gzip){
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream()) : response.getOutputStream();
+    login.append(",\"since\":").append(since);
+    login.append(",\"commentStream\":").append(CommentStream.isEnabled());
+    out.write(login.append(",\"comments\":").toString().getBytes(StandardCharsets.UTF_8));
+    commentPage.writeTo(out);
+    out.write(",\"chart\":".getBytes(StandardCharsets.UTF_8));
+    out.write(dataset == null ? "null".getBytes(StandardCharsets.UTF_8) : dataset.getEncoded().getJson());
+    out.write('}');
+    if(gzip){
+      ((GZIPOutputStream)out).finish();
+    }
+  }
+
+  // Waits for a task run on another thread, rethrowing what it threw.
+  private static void waitFor(FutureTask<Void> task) throws IOException {
+    try{
+      task.get();
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading comments", e);
+    }catch(ExecutionException e){
+      if(e.getCause() instanceof IOException){
+        throw (IOException)e.getCause();
+      }
+      if(e.getCause() instanceof RuntimeException){
+        throw (RuntimeException)e.getCause();
+      }
+      throw new IOException("Could not read comments", e.getCause());
+    }
+  }
+}
@@ -22,12 +22,10 @@ import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.gson.Gson;
-import com.google.sps.data.Comment;
+import com.google.sps.data.ChartDataset;
 import java.io.IOException;
+import java.util.Enumeration;
 import java.util.List;
-import java.util.LinkedHashMap;
-import java.util.Scanner;
 import java.util.Iterator;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -40,51 +38,106 @@ import javax.servlet.http.HttpServletResponse;
  */
 @WebServlet("/chart-data")
 public class ChartData extends HttpServlet {
-  // Maps to hold chart data.
-  private LinkedHashMap<Double, Double> theoreticalResponse = new LinkedHashMap<>();
-  private LinkedHashMap<Double, Double> actualResponse = new LinkedHashMap<>();
-  private LinkedHashMap<Double, Double> residuals = new LinkedHashMap<>();
-  
   @Override
   public void init() {
-
-    // Initializing scanners for data files.
-    Scanner experimentalScanner = new Scanner(getServletContext().getResourceAsStream(
-        "/files/TransientResponse2.csv"));
-    Scanner theoreticalScanner = new Scanner(getServletContext().getResourceAsStream(
-        "/files/theoreticalFit.csv"));
-    
-    // Reading in data files and placing data into maps. 
-    while (experimentalScanner.hasNextLine() && theoreticalScanner.hasNextLine()) {
-      String line = experimentalScanner.nextLine();
-      String[] experimentCells = line.split(",");
-      Double time = Double.valueOf(experimentCells[0]);
-      Double experimentAmplitude = Double.valueOf(experimentCells[1]);
-      actualResponse.put(time, experimentAmplitude);
-      
-      line = theoreticalScanner.nextLine();
-      String[] theoryCells = line.split(",");
-      Double theoryAmplitude = Double.valueOf(theoryCells[1]);
-      theoreticalResponse.put(time, theoryAmplitude);
-      residuals.put(time, experimentAmplitude - theoryAmplitude);
+    // Loading the default dataset up front so the first request doesn't wait for it.
+    try{
+      ChartDatasets.getRegistry(getServletContext()).get(ChartDatasets.DEFAULT_DATASET);
+    }catch(IOException | RuntimeException e){
+      System.err.println("Could not load chart data: " + e);
     }
-
-    experimentalScanner.close();
-    theoreticalScanner.close();
   }
 
+  /**
+   * Returns the chart data of the dataset named by the dataset parameter, optionally
+   * limited to the times between the from and to parameters and downsampled to the
+   * number of points given by the points parameter.
+   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
-    response.setContentType("application/json");
-    Gson gson = new Gson();
+    ChartDataset dataset = ChartDatasets.getRequested(getServletContext(), request, response);
+    if(dataset == null){
+      return;
+    }
+    ChartDataset.EncodedChart chart = dataset.getEncoded();
+    String pointsParam = request.getParameter("points");
+    String fromParam = request.getParameter("from");
+    String toParam = request.getParameter("to");
+    if(pointsParam != null || fromParam != null || toParam != null){
+      try{
+        int points = pointsParam == null ? Integer.MAX_VALUE : Integer.parseInt(pointsParam);
+        double from = fromParam == null ? Double.NEGATIVE_INFINITY : Double.parseDouble(fromParam);
+        double to = toParam == null ? Double.POSITIVE_INFINITY : Double.parseDouble(toParam);
+        chart = dataset.getDownsampled(points, from, to);
+      }catch(IllegalArgumentException e){
+        System.err.println("Could not parse chart range: " + e.getMessage());
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        return;
+      }
+    }
+    writeChart(request, response, chart);
+  }
 
-    // Converting above maps to JSON strings.
-    String theoryJson = gson.toJson(theoreticalResponse);
-    String experimentalJson = gson.toJson(actualResponse);
-    String residualJson = gson.toJson(residuals);
+  /**
+   * Writes a pre-encoded chart, in the binary columnar format if the chart has one and
+   * the client asks for application/octet-stream, otherwise as json, gzipped if the
+   * client accepts it. Each representation gets its own entity tag.
+   */
+  static void writeChart(HttpServletRequest request, HttpServletResponse response,
+      ChartDataset.EncodedChart chart) throws IOException {
+    response.setHeader("Vary", "Accept, Accept-Encoding");
+    if(chart.getBinary() != null && accepts(request, "Accept", "application/octet-stream")){
+      if(ETags.handleConditionalGet(request, response, chart.getETag() + "-bin")){
+        return;
+      }
+      response.setContentType("application/octet-stream");
+      response.setContentLength(chart.getBinary().length);
+      response.getOutputStream().write(chart.getBinary());
+      return;
+    }
 
-    // Returning all chart data as a JSON array.
-    response.getWriter().println("[" + theoryJson + "," + experimentalJson + "," + residualJson + "]");
+    boolean gzip = accepts(request, "Accept-Encoding", "gzip");
+    String etag = chart.getETag();
+    if(ETags.handleConditionalGet(request, response, gzip ? etag + "-gzip" : etag)){
+      return;
+    }
+    response.setContentType("application/json;charset=UTF-8");
+    byte[] body = chart.getJson();
+    if(gzip){
+      response.setHeader("Content-Encoding", "gzip");
+      body = chart.getGzippedJson();
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  // Whether a header of the request lists the value with a quality above zero.
+  static boolean accepts(HttpServletRequest request, String header, String value){
+    Enumeration<String> headerValues = request.getHeaders(header);
+    while(headerValues != null && headerValues.hasMoreElements()){
+      for(String candidate : headerValues.nextElement().split(",")){
+        String[] parts = candidate.trim().split(";");
+        if(parts[0].trim().equalsIgnoreCase(value) && getQuality(parts) > 0){
+          return true;
+        }
+      }
+    }
+    return false;
   }
-}
 
+  // Returns the q parameter of a header entry split at semicolons, 1 if it has none or 0 if malformed.
+  private static double getQuality(String[] parts){
+    for(int i = 1; i < parts.length; i++){
+      String[] parameter = parts[i].split("=", 2);
+      if(parameter.length == 2 && parameter[0].trim().equalsIgnoreCase("q")){
+        try{
+          double quality = Double.parseDouble(parameter[1].trim());
+          return Double.isNaN(quality) ? 0 : quality;
+        }catch(NumberFormatException e){
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+}
@@ -0,0 +1,211 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.sps.data.ChartDataset;
+import com.google.sps.data.ChartDatasetRegistry;
+import com.google.sps.data.CsvColumns;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Chart datasets read from the CSV files under /files. A dataset named name pairs
+ * /files/name.csv with its theoretical response from /files/name-fit.csv, or with the
+ * RLC transient model fitted to its measurements if it has no fit file.
+ *
+ * If the sps.chartDatasets.watch system property is true and /files is a directory on
+ * disk, a background thread watches it and reloads datasets whose files change, so new
+ * experiment data shows up without a redeploy. Background threads require manual or
+ * basic scaling.
+ */
+final class ChartDatasets{
+  // Dataset served when the request doesn't name one.
+  static final String DEFAULT_DATASET = "TransientResponse2";
+
+  // How long to wait for more changes after a file changes, since editors write in steps.
+  private static final long SETTLE_MILLIS = 200;
+
+  // Memory budget used when the sps.chartDatasets.maxBytes system property isn't set.
+  private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  // Dataset names can't contain anything that would leave the /files directory.
+  private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,100}");
+
+  private static ChartDatasetRegistry registry;
+
+  private ChartDatasets(){}
+
+  // Returns the registry shared by all chart servlets.
+  static synchronized ChartDatasetRegistry getRegistry(ServletContext context){
+    if(registry == null){
+      registry = new ChartDatasetRegistry(name -> load(context, name),
+          Long.getLong("sps.chartDatasets.maxBytes", DEFAULT_MAX_BYTES));
+      String directory = context.getRealPath("/files");
+      if(Boolean.getBoolean("sps.chartDatasets.watch") && directory != null){
+        startWatching(Paths.get(directory), registry);
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * Returns the dataset named by the request's dataset parameter, or the default one if
+   * there is no parameter. Sends 400 for a malformed name, 404 for an unknown one or 500
+   * if the dataset can't be read, and returns null in that case.
+   */
+  static ChartDataset getRequested(ServletContext context, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    String name = getRequestedName(request);
+    if(name == null){
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return null;
+    }
+    ChartDataset dataset;
+    try{
+      dataset = getRegistry(context).get(name);
+    }catch(IOException | RuntimeException e){
+      System.err.println("Could not load chart dataset " + name + ": " + e);
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return null;
+    }
+    if(dataset == null){
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+    return dataset;
+  }
+
+  /**
+   * Returns the dataset name given by the request's dataset parameter, or the default one
+   * if there is no parameter, or null if the name is malformed.
+   */
+  static String getRequestedName(HttpServletRequest request){
+    String name = request.getParameter("dataset");
+    if(name == null){
+      return DEFAULT_DATASET;
+    }
+    if(!NAME_PATTERN.matcher(name).matches()){
+      System.err.println("Malformed dataset name: " + name);
+      return null;
+    }
+    return name;
+  }
+
+  private static void startWatching(Path directory, ChartDatasetRegistry registry){
+    WatchService watchService;
+    try{
+      watchService = directory.getFileSystem().newWatchService();
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }catch(IOException | RuntimeException e){
+      System.err.println("Could not watch chart data files: " + e);
+      return;
+    }
+    ThreadManager.createBackgroundThread(() -> watch(watchService, registry)).start();
+  }
+
+  // Reloads the datasets affected by file changes until the thread is interrupted.
+  private static void watch(WatchService watchService, ChartDatasetRegistry registry){
+    while(!Thread.currentThread().isInterrupted()){
+      try{
+        Set<String> changed = new HashSet<>();
+        WatchKey key = watchService.take();
+        do{
+          for(WatchEvent<?> event : key.pollEvents()){
+            if(event.context() instanceof Path){
+              changed.add(event.context().toString());
+            }
+          }
+          key.reset();
+          key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }while(key != null);
+
+        for(String name : getAffectedDatasets(changed, registry)){
+          try{
+            registry.reload(name);
+          }catch(IOException | RuntimeException e){
+            System.err.println("Could not reload chart dataset " + name + ": " + e);
+          }
+        }
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // Returns the names of the loaded datasets that read any of the changed files.
+  private static Set<String> getAffectedDatasets(Set<String> changedFiles, ChartDatasetRegistry registry){
+    Set<String> loaded = registry.getLoadedNames();
+    Set<String> affected = new HashSet<>();
+    for(String fileName : changedFiles){
+      if(!fileName.endsWith(".csv")){
+        continue;
+      }
+      String name = fileName.substring(0, fileName.length() - ".csv".length());
+      if(name.endsWith("-fit")){
+        affected.add(name.substring(0, name.length() - "-fit".length()));
+      }else{
+        affected.add(name);
+      }
+    }
+    affected.retainAll(loaded);
+    return affected;
+  }
+
+  private static ChartDataset load(ServletContext context, String name) throws IOException {
+    double[][] experimentalColumns = readColumns(context, "/files/" + name + ".csv");
+    if(experimentalColumns == null){
+      return null;
+    }
+    double[][] theoreticalColumns = readColumns(context, "/files/" + name + "-fit.csv");
+    if(theoreticalColumns == null){
+      return ChartDataset.fitted(experimentalColumns[0], experimentalColumns[1]);
+    }
+    return ChartDataset.align(experimentalColumns[0], experimentalColumns[1],
+        theoreticalColumns[0], theoreticalColumns[1]);
+  }
+
+  /**
+   * Reads the time and value columns of a CSV file in the webapp, memory mapping it
+   * when it is available as a file and reading the resource stream otherwise. Returns
+   * null if there is no such file.
+   */
+  private static double[][] readColumns(ServletContext context, String path) throws IOException {
+    String realPath = context.getRealPath(path);
+    if(realPath != null){
+      Path file = Paths.get(realPath);
+      if(Files.isRegularFile(file)){
+        return CsvColumns.read(file, 2);
+      }
+    }
+    try(InputStream in = context.getResourceAsStream(path)){
+      return in == null ? null : CsvColumns.read(in, 2);
+    }
+  }
+}
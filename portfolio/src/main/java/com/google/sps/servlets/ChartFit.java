@@ -0,0 +1,111 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.ChartDataset;
+import com.google.sps.data.RlcFit;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that fits the RLC transient model to the experimental series of a chart
+ * dataset and returns the fitted parameters, curve and residuals. Fits are cached by
+ * the hash of the series, so they survive reloads that don't change the measurements.
+ */
+@WebServlet("/chart-data/fit")
+public class ChartFit extends HttpServlet{
+  // Most fits kept in memory.
+  private static final int MAX_CACHED_FITS = 32;
+
+  // Encoded fits by experimental series hash, least recently used first.
+  private static final Map<Long, ChartDataset.EncodedChart> fits =
+      new LinkedHashMap<Long, ChartDataset.EncodedChart>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ChartDataset.EncodedChart> eldest){
+          return size() > MAX_CACHED_FITS;
+        }
+      };
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    ChartDataset dataset = ChartDatasets.getRequested(getServletContext(), request, response);
+    if(dataset == null){
+      return;
+    }
+    ChartDataset.EncodedChart fit;
+    synchronized(fits){
+      fit = fits.get(dataset.getExperimentalHash());
+    }
+    if(fit == null){
+      try{
+        fit = ChartDataset.EncodedChart.of(encodeFit(dataset, dataset.fitRlc()));
+      }catch(IllegalArgumentException e){
+        System.err.println("Could not fit chart data: " + e.getMessage());
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        return;
+      }
+      synchronized(fits){
+        fits.put(dataset.getExperimentalHash(), fit);
+      }
+    }
+    ChartData.writeChart(request, response, fit);
+  }
+
+  /**
+   * Encodes a fit as {parameters, rmse, iterations, fit, residuals}, with the curve and
+   * residuals in the same time to value form as the chart series.
+   */
+  private static byte[] encodeFit(ChartDataset dataset, RlcFit fit){
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try(JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(encoded, StandardCharsets.UTF_8))){
+      jsonWriter.beginObject();
+      jsonWriter.name("parameters").beginObject();
+      jsonWriter.name("amplitude").value(fit.getAmplitude());
+      jsonWriter.name("decayRate").value(fit.getDecayRate());
+      jsonWriter.name("angularFrequency").value(fit.getAngularFrequency());
+      jsonWriter.name("phase").value(fit.getPhase());
+      jsonWriter.name("offset").value(fit.getOffset());
+      jsonWriter.endObject();
+      jsonWriter.name("rmse").value(fit.getRmse());
+      jsonWriter.name("iterations").value(fit.getIterations());
+
+      jsonWriter.name("fit").beginObject();
+      for(int i = 0; i < dataset.size(); i++){
+        jsonWriter.name(Double.toString(dataset.getTime(i))).value(fit.evaluate(dataset.getTime(i)));
+      }
+      jsonWriter.endObject();
+      jsonWriter.name("residuals").beginObject();
+      for(int i = 0; i < dataset.size(); i++){
+        double time = dataset.getTime(i);
+        jsonWriter.name(Double.toString(time)).value(dataset.getExperimental(i) - fit.evaluate(time));
+      }
+      jsonWriter.endObject();
+      jsonWriter.endObject();
+    }catch(IOException e){
+      // Writing to memory can't fail.
+      throw new AssertionError(e);
+    }
+    return encoded.toByteArray();
+  }
+}
@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.ChartDataset;
+import com.google.sps.data.RlcSimulator;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that simulates the transient response of a series RLC circuit with the
+ * parameters R, L and C (ohms, henries, farads), the initial capacitor voltage v0
+ * (volts, default 1) and the end time t1 and step dt (milliseconds, like the chart
+ * times, default the last time of the dataset and 0.002). Returns the chart of the
+ * dataset named by the dataset parameter, or the default one, with the simulated
+ * response as the theoretical series: [theory, experimental, residual].
+ */
+@WebServlet("/chart-data/simulate")
+public class ChartSimulation extends HttpServlet{
+  // Most simulations kept in memory.
+  private static final int MAX_CACHED_SIMULATIONS = 64;
+
+  // Longest simulation served, in steps.
+  private static final int MAX_STEPS = 100000;
+
+  // Encoded charts by dataset measurements and normalized parameters, least recently used first.
+  private static final Map<String, ChartDataset.EncodedChart> simulations =
+      new LinkedHashMap<String, ChartDataset.EncodedChart>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ChartDataset.EncodedChart> eldest){
+          return size() > MAX_CACHED_SIMULATIONS;
+        }
+      };
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    double resistance;
+    double inductance;
+    double capacitance;
+    double v0;
+    BigDecimal step;
+    try{
+      resistance = Double.parseDouble(request.getParameter("R"));
+      inductance = Double.parseDouble(request.getParameter("L"));
+      capacitance = Double.parseDouble(request.getParameter("C"));
+      v0 = getParameter(request, "v0", "1");
+      step = new BigDecimal(Double.toString(getParameter(request, "dt", "0.002")));
+    }catch(NullPointerException | NumberFormatException e){
+      System.err.println("Could not parse simulation parameters: " + e);
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    ChartDataset dataset = ChartDatasets.getRequested(getServletContext(), request, response);
+    if(dataset == null){
+      return;
+    }
+    BigDecimal endTime;
+    try{
+      String defaultEndTime = dataset.size() == 0 ? "2" : Double.toString(dataset.getTime(dataset.size() - 1));
+      endTime = new BigDecimal(Double.toString(getParameter(request, "t1", defaultEndTime)));
+    }catch(NumberFormatException e){
+      System.err.println("Could not parse simulation parameters: " + e);
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if(step.signum() <= 0 || endTime.signum() < 0
+        || endTime.divide(step, RoundingMode.FLOOR).compareTo(BigDecimal.valueOf(MAX_STEPS)) > 0){
+      System.err.println("Simulation must have a positive step and at most " + MAX_STEPS + " steps");
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    int steps = endTime.divide(step, RoundingMode.FLOOR).intValue();
+
+    // Parameters are keyed by their parsed values so equivalent spellings share an entry.
+    String key = dataset.getExperimentalHash() + ":" + resistance + ":" + inductance + ":" + capacitance
+        + ":" + v0 + ":" + endTime + ":" + step;
+    ChartDataset.EncodedChart simulation;
+    synchronized(simulations){
+      simulation = simulations.get(key);
+    }
+    if(simulation == null){
+      try{
+        double[] voltages = RlcSimulator.simulate(resistance, inductance, capacitance, v0,
+            step.doubleValue() / 1000, steps);
+        simulation = compare(dataset, voltages, step).getEncoded();
+      }catch(IllegalArgumentException e){
+        // Also thrown for responses that blow up to infinity.
+        System.err.println("Could not simulate circuit: " + e.getMessage());
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        return;
+      }
+      synchronized(simulations){
+        simulations.put(key, simulation);
+      }
+    }
+    ChartData.writeChart(request, response, simulation);
+  }
+
+  private static double getParameter(HttpServletRequest request, String name, String defaultValue){
+    String value = request.getParameter(name);
+    return Double.parseDouble(value == null ? defaultValue : value);
+  }
+
+  /**
+   * Returns the dataset's measurements with the simulated voltages as their theoretical
+   * response, interpolated onto the measurement times. Measurements after the end of the
+   * simulation are dropped.
+   */
+  private static ChartDataset compare(ChartDataset dataset, double[] voltages, BigDecimal step){
+    double[] simulationTimes = new double[voltages.length];
+    for(int i = 0; i < voltages.length; i++){
+      // Multiplying exactly so times line up with the ones read from CSV files.
+      simulationTimes[i] = step.multiply(BigDecimal.valueOf(i)).doubleValue();
+    }
+    double[] times = new double[dataset.size()];
+    double[] experimental = new double[dataset.size()];
+    for(int i = 0; i < times.length; i++){
+      times[i] = dataset.getTime(i);
+      experimental[i] = dataset.getExperimental(i);
+    }
+    return ChartDataset.align(times, experimental, simulationTimes, voltages);
+  }
+}
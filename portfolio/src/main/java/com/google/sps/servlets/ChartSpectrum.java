@@ -0,0 +1,37 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.ChartDataset;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns the magnitude spectrum of a chart dataset's experimental series.
+ */
+@WebServlet("/chart-data/spectrum")
+public class ChartSpectrum extends HttpServlet{
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    ChartDataset dataset = ChartDatasets.getRequested(getServletContext(), request, response);
+    if(dataset == null){
+      return;
+    }
+    ChartData.writeChart(request, response, dataset.getSpectrum());
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.ChartDataset;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns statistics of the residuals of a chart dataset. Chi-squared uses
+ * the measurement uncertainty given by the sigma parameter, 1 by default.
+ */
+@WebServlet("/chart-data/stats")
+public class ChartStats extends HttpServlet{
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    ChartDataset dataset = ChartDatasets.getRequested(getServletContext(), request, response);
+    if(dataset == null){
+      return;
+    }
+    double sigma;
+    try{
+      String sigmaParam = request.getParameter("sigma");
+      sigma = sigmaParam == null ? 1 : Double.parseDouble(sigmaParam);
+    }catch(NumberFormatException e){
+      System.err.println("Could not parse sigma: " + e.getMessage());
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if(!(sigma > 0) || Double.isInfinite(sigma)){
+      System.err.println("sigma must be positive");
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    // The statistics for the default uncertainty are encoded once with the dataset.
+    ChartDataset.EncodedChart stats = sigma == 1 ? dataset.getEncodedStats()
+        : ChartDataset.EncodedChart.of(dataset.getStats().encodeJson(sigma));
+    ChartData.writeChart(request, response, stats);
+  }
+}
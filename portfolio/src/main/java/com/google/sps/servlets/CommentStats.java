@@ -0,0 +1,63 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.CommentBroadcaster;
+import com.google.sps.data.CommentCache;
+import com.google.sps.data.CommentIndex;
+import com.google.sps.data.CommentWriteQueue;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that reports statistics about the comment cache of this instance.
+ */
+@WebServlet("/comment-stats")
+public class CommentStats extends HttpServlet{
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    CommentCache commentCache = CommentCache.getInstance();
+
+    Map<String, Object> cacheStats = new LinkedHashMap<>();
+    cacheStats.put("capacity", commentCache.getCapacity());
+    cacheStats.put("size", commentCache.getSize());
+    cacheStats.put("hits", commentCache.getHits());
+    cacheStats.put("misses", commentCache.getMisses());
+
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("cache", cacheStats);
+    CommentIndex commentIndex = CommentIndex.getInstance();
+    Map<String, Object> indexStats = new LinkedHashMap<>();
+    indexStats.put("comments", commentIndex.getSize());
+    indexStats.put("terms", commentIndex.getTermCount());
+    stats.put("searchIndex", indexStats);
+    stats.put("coalescing", DataServlet.getCoalescingStats());
+    stats.put("streamClients", CommentBroadcaster.getInstance().getClientCount());
+    stats.put("writeBehindEnabled", CommentWriteQueue.isEnabled());
+    if(CommentWriteQueue.isEnabled()){
+      stats.put("writeBehindPending", CommentWriteQueue.getInstance().getSize());
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(new Gson().toJson(stats));
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.CommentBroadcaster;
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that keeps a server-sent event stream open and pushes posted and deleted
+ * comments to it. The connection is held in async mode so idle clients don't use up
+ * a request thread. Streaming needs a runtime that doesn't buffer whole responses,
+ * which rules out the App Engine standard environment, so the stream answers 404
+ * unless the sps.commentStream.enabled system property is true. Clients then poll
+ * /data?since= for changes instead.
+ */
+@WebServlet(urlPatterns = "/data/stream", asyncSupported = true)
+public class CommentStream extends HttpServlet{
+
+  // Whether the runtime can stream responses, so clients should open the stream.
+  static boolean isEnabled(){
+    return Boolean.getBoolean("sps.commentStream.enabled");
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException{
+    if(!isEnabled()){
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    response.setContentType("text/event-stream;charset=UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+
+    AsyncContext client = request.startAsync();
+    // Keeping the stream open until the client goes away.
+    client.setTimeout(0);
+    client.addListener(new AsyncListener(){
+      @Override
+      public void onComplete(AsyncEvent event){
+        CommentBroadcaster.getInstance().unregister(client);
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event){
+        CommentBroadcaster.getInstance().unregister(client);
+      }
+
+      @Override
+      public void onError(AsyncEvent event){
+        CommentBroadcaster.getInstance().unregister(client);
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event){}
+    });
+
+    // Sending the headers right away so the client knows the stream is open.
+    response.getWriter().write(": connected\n\n");
+    response.flushBuffer();
+    CommentBroadcaster.getInstance().register(client);
+  }
+}
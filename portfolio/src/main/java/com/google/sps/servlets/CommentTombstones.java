@@ -0,0 +1,91 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DeletedComment entities telling clients syncing changes which comments were deleted.
+ * Deleting a single comment leaves a tombstone with its id; deleting every comment
+ * replaces all tombstones with a single one named "all". Tombstones are kept for
+ * RETENTION_MILLIS; clients that last synced before that must fetch the comments again.
+ */
+final class CommentTombstones{
+  static final String KIND = "DeletedComment";
+
+  // How long tombstones are kept.
+  static final long RETENTION_MILLIS = 24L * 60 * 60 * 1000;
+
+  // Most tombstones removed by a single prune or delete call.
+  private static final int DELETE_BATCH_SIZE = 500;
+
+  private static final String ALL = "all";
+
+  private CommentTombstones(){}
+
+  // Records the deletion of a single comment and drops expired tombstones.
+  static void put(DatastoreService dataStore, long id){
+    Entity tombstone = new Entity(KIND, id);
+    tombstone.setProperty("timestamp", System.currentTimeMillis());
+    dataStore.put(tombstone);
+    prune(dataStore);
+  }
+
+  // Records the deletion of every comment, replacing the tombstones of single comments.
+  static void putAll(DatastoreService dataStore){
+    Query tombstoneQuery = new Query(KIND).setKeysOnly();
+    List<Key> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+    for(Entity tombstone : dataStore.prepare(tombstoneQuery).asIterable(FetchOptions.Builder.withChunkSize(DELETE_BATCH_SIZE))){
+      batch.add(tombstone.getKey());
+      if(batch.size() == DELETE_BATCH_SIZE){
+        dataStore.delete(batch);
+        batch = new ArrayList<>(DELETE_BATCH_SIZE);
+      }
+    }
+    if(!batch.isEmpty()){
+      dataStore.delete(batch);
+    }
+
+    Entity tombstone = new Entity(KIND, ALL);
+    tombstone.setProperty("timestamp", System.currentTimeMillis());
+    dataStore.put(tombstone);
+  }
+
+  // Whether a tombstone records the deletion of every comment rather than a single one.
+  static boolean isAll(Entity tombstone){
+    return ALL.equals(tombstone.getKey().getName());
+  }
+
+  // Deletes up to a batch of tombstones older than the retention period.
+  private static void prune(DatastoreService dataStore){
+    Query expiredQuery = new Query(KIND).setKeysOnly().setFilter(new FilterPredicate(
+        "timestamp", FilterOperator.LESS_THAN, System.currentTimeMillis() - RETENTION_MILLIS));
+    List<Key> expired = new ArrayList<>();
+    for(Entity tombstone : dataStore.prepare(expiredQuery).asIterable(FetchOptions.Builder.withLimit(DELETE_BATCH_SIZE))){
+      expired.add(tombstone.getKey());
+    }
+    if(!expired.isEmpty()){
+      dataStore.delete(expired);
+    }
+  }
+}
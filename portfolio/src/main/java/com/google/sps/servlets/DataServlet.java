@@ -16,18 +16,38 @@ package com.google.sps.servlets;
 
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.gson.Gson;
-import com.google.sps.data.Comment;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.CommentBroadcaster;
+import com.google.sps.data.CommentCache;
+import com.google.sps.data.CommentGeneration;
+import com.google.sps.data.CommentIndex;
+import com.google.sps.data.CommentJson;
+import com.google.sps.data.CommentWriteQueue;
+import com.google.sps.data.SingleFlight;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Objects;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -37,35 +57,437 @@ import javax.servlet.http.HttpServletResponse;
  * Servlet that retrieves comments from a datastore
  * and allows users to post comments.
  */
-@WebServlet("/data")
+@WebServlet(urlPatterns = "/data", loadOnStartup = 1)
 public class DataServlet extends HttpServlet {
   
+  private static final CommentCache commentCache = CommentCache.getInstance();
+  private static final CommentIndex commentIndex = CommentIndex.getInstance();
+
+  // Most added or deleted comments returned by a single request for changes.
+  private static final int MAX_CHANGES = 500;
+
+  // How far behind the since timestamp requests for changes look again. Comment timestamps
+  // are taken on the posting instance before the comment is stored, so a comment can become
+  // visible after one with a later timestamp.
+  private static final long SYNC_WINDOW_MILLIS = 60000;
+
+  // How long a post waits for room in a full write-behind queue before giving up.
+  private static final long ENQUEUE_TIMEOUT_MILLIS = 2000;
+
+  // Largest page whose datastore read is shared by identical concurrent requests.
+  private static final int MAX_SHARED_PAGE_SIZE = 100;
+
+  private static final String CACHE_LOAD_KEY = "newest";
+
+  // Reads of the datastore shared by identical concurrent requests.
+  private static final SingleFlight<String, Void> cacheLoads = new SingleFlight<>();
+  private static final SingleFlight<String, EncodedPage> pageFlights = new SingleFlight<>();
+
+  // Building the search index from the stored comments. If that fails the first search
+  // tries again.
+  @Override
+  public void init(){
+    try{
+      commentIndex.build();
+    }catch(RuntimeException e){
+      System.err.println("Could not build comment search index: " + e);
+    }
+  }
+
   /**
-   * Takes in a query object and places its content in a json formatted string
-   * and returns it.
+   * Takes in a query object and streams a single page of at most maxComm comments
+   * starting at the given cursor to the json writer. Each entity is written as soon as
+   * it arrives from the datastore, so memory use doesn't grow with the page size.
    */
-  private String getJson(Query commentQuery, int maxComm, String currentUser){
-    List<Comment> commentList = new ArrayList<>();
+  private static void writeJson(JsonWriter jsonWriter, Query commentQuery, int maxComm, Cursor startCursor,
+      String currentUser) throws IOException {
+    jsonWriter.beginObject();
+    jsonWriter.name("viewer").value(currentUser);
+    jsonWriter.name("comments");
+    String nextCursor = writeComments(jsonWriter, commentQuery, maxComm, startCursor);
+    if(nextCursor != null){
+      jsonWriter.name("nextCursor").value(nextCursor);
+    }
+    jsonWriter.endObject();
+  }
+
+  /**
+   * Writes a json array of at most maxComm comments starting at the given cursor and
+   * returns the cursor of the following page, or null if there is none.
+   */
+  private static String writeComments(JsonWriter jsonWriter, Query commentQuery, int maxComm, Cursor startCursor)
+      throws IOException {
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(maxComm);
+    if(startCursor != null){
+      fetchOptions.startCursor(startCursor);
+    }
 
     DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
-    Iterator<Entity> commentIterator = dataStore.prepare(commentQuery).asIterator();
+    QueryResultIterator<Entity> commentIterator = dataStore.prepare(commentQuery).asQueryResultIterator(fetchOptions);
     
-    //Counter to limit number of comments displayed to the desired amount.
-    int commentCounter = 0; 
+    // Comments waiting in the write-behind queue are newer than any stored comment, so
+    // they come first on the first page.
+    List<Entity> pending = new ArrayList<>();
+    if(startCursor == null && CommentWriteQueue.isEnabled()){
+      pending = CommentWriteQueue.getInstance().getPending();
+    }
+    Set<Long> pendingIds = new HashSet<>();
     
-    while(commentIterator.hasNext() && commentCounter < maxComm){
+    jsonWriter.beginArray();
+    int commentCounter = 0;
+    for(Entity commentEntity : pending){
+      if(commentCounter == maxComm){
+        break;
+      }
+      CommentJson.write(jsonWriter, commentEntity);
+      pendingIds.add(commentEntity.getKey().getId());
+      commentCounter++;
+    }
+    while(commentCounter < maxComm && commentIterator.hasNext()){
       Entity commentEntity = commentIterator.next();
-      String userEmail = (String)commentEntity.getProperty("email");
-      String content = (String)commentEntity.getProperty("content");
-      long timestamp = (long)commentEntity.getProperty("timestamp");
-      long id = commentEntity.getKey().getId();
-      commentList.add(new Comment(id, userEmail, timestamp, content, currentUser));
+      if(pendingIds.contains(commentEntity.getKey().getId())){
+        continue;
+      }
+      CommentJson.write(jsonWriter, commentEntity);
       commentCounter++;
     }
+    jsonWriter.endArray();
+
+    // A short page means there is nothing left to fetch.
+    Cursor nextCursor = commentIterator.getCursor();
+    if(commentCounter == maxComm && nextCursor != null){
+      return nextCursor.toWebSafeString();
+    }
+    return null;
+  }
+
+  // A json array of comments and the cursor of the following page, or null if there is none.
+  private static final class EncodedPage{
+    private final byte[] comments;
+    private final String nextCursor;
+
+    private EncodedPage(byte[] comments, String nextCursor){
+      this.comments = comments;
+      this.nextCursor = nextCursor;
+    }
+  }
+
+  /**
+   * Reads and encodes a page of comments. Identical requests arriving while the page is
+   * being read share that read instead of querying the datastore again.
+   */
+  private static EncodedPage fetchPage(Query commentQuery, int maxComm, Cursor startCursor) throws IOException {
+    String key = maxComm + ":" + (startCursor == null ? "" : startCursor.toWebSafeString());
+    return pageFlights.run(key, () -> {
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+      JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(encoded, StandardCharsets.UTF_8));
+      String nextCursor = writeComments(jsonWriter, commentQuery, maxComm, startCursor);
+      jsonWriter.flush();
+      return new EncodedPage(encoded.toByteArray(), nextCursor);
+    });
+  }
 
+  // Writes an encoded json array of comments wrapped in the envelope of a comment page.
+  private static void writeEnvelope(OutputStream out, byte[] encodedComments, String nextCursor,
+      String currentUser) throws IOException {
     Gson gson = new Gson();
+    StringBuilder envelope = new StringBuilder();
+    envelope.append("{\"viewer\":").append(gson.toJson(currentUser));
+    if(nextCursor != null){
+      envelope.append(",\"nextCursor\":").append(gson.toJson(nextCursor));
+    }
+    envelope.append(",\"comments\":");
+    out.write(envelope.toString().getBytes(StandardCharsets.UTF_8));
+    out.write(encodedComments);
+    out.write('}');
+  }
+
+  // Returns how often datastore reads ran and how many requests shared another's read.
+  static Map<String, Object> getCoalescingStats(){
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("cacheLoads", getFlightStats(cacheLoads));
+    stats.put("pages", getFlightStats(pageFlights));
+    return stats;
+  }
 
-    return gson.toJson(commentList);
+  private static Map<String, Object> getFlightStats(SingleFlight<?, ?> flights){
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("executions", flights.getExecutions());
+    stats.put("collapsed", flights.getCollapsed());
+    stats.put("inFlight", flights.getInFlight());
+    return stats;
+  }
+
+  /**
+   * Writes the first page of at most maxComm comments as json to the output stream, from
+   * the comment cache when it can answer and straight from the datastore otherwise.
+   */
+  static void writeFirstPage(OutputStream out, int maxComm, String currentUser) throws IOException {
+    Query commentQuery = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
+    long generation = commentCache.getGeneration();
+    List<CommentCache.Entry> cachedPage = getCachedPage(commentQuery, maxComm);
+    if(cachedPage != null){
+      writeCachedJson(out, cachedPage, generation, maxComm, getNextCursor(cachedPage, maxComm), currentUser);
+      return;
+    }
+    writePage(out, commentQuery, maxComm, null, currentUser);
+  }
+
+  /**
+   * Writes a page of comments read from the datastore. Small pages are read once for all
+   * identical concurrent requests; larger ones are streamed so memory use stays flat.
+   */
+  private static void writePage(OutputStream out, Query commentQuery, int maxComm, Cursor startCursor,
+      String currentUser) throws IOException {
+    if(maxComm <= MAX_SHARED_PAGE_SIZE){
+      EncodedPage page = fetchPage(commentQuery, maxComm, startCursor);
+      writeEnvelope(out, page.comments, page.nextCursor, currentUser);
+      return;
+    }
+    JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writeJson(jsonWriter, commentQuery, maxComm, startCursor, currentUser);
+    jsonWriter.flush();
+  }
+
+  /**
+   * Returns the first page of at most maxComm comments from the comment cache, filling
+   * the cache from the datastore if it can't answer. Returns null if the cache can't answer
+   * the request.
+   */
+  private static List<CommentCache.Entry> getCachedPage(Query commentQuery, int maxComm) throws IOException {
+    if(maxComm > commentCache.getCapacity()){
+      // The cache never holds that many comments, so loading it wouldn't help.
+      return null;
+    }
+    List<CommentCache.Entry> page = commentCache.getPage(maxComm);
+    if(page == null){
+      // Concurrent misses share a single load.
+      cacheLoads.run(CACHE_LOAD_KEY, () -> {
+        loadCache(commentQuery);
+        return null;
+      });
+      page = commentCache.peekPage(maxComm);
+    }
+    return page;
+  }
+
+  // Returns the cursor following a page of cached comments, or null if it is the last page.
+  private static String getNextCursor(List<CommentCache.Entry> page, int maxComm){
+    if(page.size() == maxComm && !commentCache.isLastPage(page)){
+      return page.get(page.size() - 1).getCursor();
+    }
+    return null;
+  }
+
+  /**
+   * Builds the entity tag of a page of cached comments from its newest timestamp and
+   * comment count. The comment ids, next cursor and current user are hashed in as well
+   * since deleting an older comment or a different viewer changes the response too.
+   */
+  private static String getETag(List<CommentCache.Entry> page, String nextCursor, String currentUser){
+    long newestTimestamp = 0;
+    int hash = Objects.hash(nextCursor, currentUser);
+    for(CommentCache.Entry entry : page){
+      Entity commentEntity = entry.getEntity();
+      newestTimestamp = Math.max(newestTimestamp, (long)commentEntity.getProperty("timestamp"));
+      hash = 31 * hash + Long.hashCode(commentEntity.getKey().getId());
+    }
+    return newestTimestamp + "-" + page.size() + "-" + Integer.toHexString(hash);
+  }
+
+  /**
+   * Writes a page of cached comments and the cursor following it to the output stream.
+   * The comments are encoded once per cache change and shared by every viewer; only the
+   * small envelope around them is written per request.
+   */
+  private static void writeCachedJson(OutputStream out, List<CommentCache.Entry> page, long generation,
+      int maxComm, String nextCursor, String currentUser) throws IOException {
+    byte[] encodedPage = commentCache.getEncodedPage(maxComm);
+    if(encodedPage == null){
+      List<Entity> commentEntities = new ArrayList<>(page.size());
+      for(CommentCache.Entry entry : page){
+        commentEntities.add(entry.getEntity());
+      }
+      encodedPage = CommentJson.encodeArray(commentEntities);
+      commentCache.putEncodedPage(maxComm, generation, encodedPage);
+    }
+    writeEnvelope(out, encodedPage, nextCursor, currentUser);
+  }
+
+  /**
+   * Fills the comment cache with the newest comments, remembering the cursor after
+   * each of them so pages served from the cache can be continued from the datastore.
+   */
+  private static void loadCache(Query commentQuery){
+    long generation = commentCache.getGeneration();
+    Long sharedGeneration = CommentGeneration.get();
+    int capacity = commentCache.getCapacity();
+    List<CommentCache.Entry> newest = new ArrayList<>();
+
+    DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+    QueryResultIterator<Entity> commentIterator =
+        dataStore.prepare(commentQuery).asQueryResultIterator(FetchOptions.Builder.withLimit(capacity));
+    while(commentIterator.hasNext()){
+      Entity commentEntity = commentIterator.next();
+      newest.add(new CommentCache.Entry(commentEntity, commentIterator.getCursor().toWebSafeString()));
+    }
+
+    boolean complete = newest.size() < capacity;
+    if(CommentWriteQueue.isEnabled()){
+      newest = withPending(newest, CommentWriteQueue.getInstance().getPending());
+    }
+    commentCache.load(newest, complete, generation, sharedGeneration);
+  }
+
+  /**
+   * Merges comments waiting in the write-behind queue into stored cache entries, keeping
+   * them newest first. Queued comments have no cursor since they aren't stored yet.
+   */
+  private static List<CommentCache.Entry> withPending(List<CommentCache.Entry> stored, List<Entity> pending){
+    Set<Long> pendingIds = new HashSet<>();
+    for(Entity commentEntity : pending){
+      pendingIds.add(commentEntity.getKey().getId());
+    }
+
+    List<CommentCache.Entry> merged = new ArrayList<>();
+    int pendingIndex = 0;
+    for(CommentCache.Entry entry : stored){
+      if(pendingIds.contains(entry.getEntity().getKey().getId())){
+        continue;
+      }
+      long timestamp = (long)entry.getEntity().getProperty("timestamp");
+      while(pendingIndex < pending.size()
+          && (long)pending.get(pendingIndex).getProperty("timestamp") >= timestamp){
+        merged.add(new CommentCache.Entry(pending.get(pendingIndex++), null));
+      }
+      merged.add(entry);
+    }
+    while(pendingIndex < pending.size()){
+      merged.add(new CommentCache.Entry(pending.get(pendingIndex++), null));
+    }
+    return merged;
+  }
+
+  /**
+   * Writes the newest comments containing every word of the search query, starting after
+   * the given search cursor, in the same format as a page of comments.
+   */
+  private void writeSearchResults(HttpServletResponse response, String searchQuery, String cursorParam,
+      int maxComm, String currentUser) throws IOException {
+    CommentIndex.SearchPage results;
+    try{
+      String cursor = (cursorParam == null || cursorParam.isEmpty()) ? null : cursorParam;
+      commentIndex.build();
+      results = commentIndex.search(searchQuery, cursor, maxComm);
+    }catch(IllegalArgumentException e){
+      System.err.println("Could not parse search cursor");
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    JsonWriter jsonWriter = new JsonWriter(response.getWriter());
+    jsonWriter.beginObject();
+    jsonWriter.name("viewer").value(currentUser);
+    jsonWriter.name("comments").beginArray();
+    for(Entity commentEntity : results.getComments()){
+      CommentJson.write(jsonWriter, commentEntity);
+    }
+    jsonWriter.endArray();
+    if(results.getNextCursor() != null){
+      jsonWriter.name("nextCursor").value(results.getNextCursor());
+    }
+    jsonWriter.endObject();
+    jsonWriter.flush();
+  }
+
+  /**
+   * Writes the comments posted after the since timestamp and the ids of comments deleted
+   * after it, so clients keeping a copy of the comments only fetch what changed. Changes
+   * from up to SYNC_WINDOW_MILLIS before since are sent again, so clients must ignore
+   * comments they already have. reset is true when the client's copy can't be patched and
+   * the comments must be fetched again, either because too much changed or because since is
+   * older than the tombstones kept. clearedAt is the time every comment was deleted, if that
+   * happened in the same period; clients that haven't seen that time yet must fetch the
+   * comments again too. nextSince is the timestamp to ask for next time, taken from this
+   * instance's clock.
+   */
+  private void writeChanges(HttpServletResponse response, long since, String currentUser) throws IOException {
+    DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(MAX_CHANGES + 1);
+    long nextSince = System.currentTimeMillis();
+    long from = since - SYNC_WINDOW_MILLIS;
+    boolean reset = since < nextSince - CommentTombstones.RETENTION_MILLIS;
+
+    // Finding deleted comments through their tombstones.
+    Query deletedQuery = new Query(CommentTombstones.KIND)
+        .setFilter(new FilterPredicate("timestamp", FilterOperator.GREATER_THAN, from));
+    List<Long> deletedIds = new ArrayList<>();
+    Long clearedAt = null;
+    for(Entity tombstone : dataStore.prepare(deletedQuery).asIterable(fetchOptions)){
+      if(CommentTombstones.isAll(tombstone)){
+        // Everything was deleted at once.
+        clearedAt = (long)tombstone.getProperty("timestamp");
+      }else{
+        deletedIds.add(tombstone.getKey().getId());
+      }
+    }
+
+    Query addedQuery = new Query("Comment")
+        .setFilter(new FilterPredicate("timestamp", FilterOperator.GREATER_THAN, from))
+        .addSort("timestamp", SortDirection.DESCENDING);
+    List<Entity> added = new ArrayList<>();
+    Set<Long> addedIds = new HashSet<>();
+    if(CommentWriteQueue.isEnabled()){
+      for(Entity commentEntity : CommentWriteQueue.getInstance().getPending()){
+        if((long)commentEntity.getProperty("timestamp") > from){
+          added.add(commentEntity);
+          addedIds.add(commentEntity.getKey().getId());
+        }
+      }
+    }
+    for(Entity commentEntity : dataStore.prepare(addedQuery).asIterable(fetchOptions)){
+      if(addedIds.add(commentEntity.getKey().getId())){
+        added.add(commentEntity);
+      }
+    }
+    if(added.size() > MAX_CHANGES || deletedIds.size() > MAX_CHANGES){
+      reset = true;
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    JsonWriter jsonWriter = new JsonWriter(response.getWriter());
+    jsonWriter.beginObject();
+    jsonWriter.name("viewer").value(currentUser);
+    jsonWriter.name("reset").value(reset);
+    jsonWriter.name("nextSince").value(nextSince);
+    if(clearedAt != null){
+      jsonWriter.name("clearedAt").value(clearedAt);
+    }
+    if(!reset){
+      jsonWriter.name("comments").beginArray();
+      for(Entity commentEntity : added){
+        CommentJson.write(jsonWriter, commentEntity);
+      }
+      jsonWriter.endArray();
+      jsonWriter.name("deleted").beginArray();
+      for(long id : deletedIds){
+        jsonWriter.value(id);
+      }
+      jsonWriter.endArray();
+    }
+    jsonWriter.endObject();
+    jsonWriter.flush();
+  }
+
+  // Queues a comment, waiting a short while for room when the queue is full.
+  private static boolean enqueue(CommentWriteQueue writeQueue, Entity commentEntity){
+    try{
+      return writeQueue.offer(commentEntity, ENQUEUE_TIMEOUT_MILLIS);
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      return false;
+    }
   }
 
   /**
@@ -88,22 +510,43 @@ public class DataServlet extends HttpServlet {
 
     long timeStamp = System.currentTimeMillis();
     
-    // Creating comment entity.
-    Entity commentEntity = new Entity("Comment");
+    // Creating comment entity. Queued comments need their key up front so they can be
+    // shown and deleted before they are stored.
+    CommentWriteQueue writeQueue = null;
+    Entity commentEntity;
+    if(CommentWriteQueue.isEnabled()){
+      writeQueue = CommentWriteQueue.getInstance();
+      commentEntity = new Entity(writeQueue.allocateKey());
+    }else{
+      commentEntity = new Entity("Comment");
+    }
     commentEntity.setProperty("email", userService.getCurrentUser().getEmail());
     commentEntity.setProperty("content", newComment);
     commentEntity.setProperty("timestamp", timeStamp);
 
-    // Store comment entity in datastore.
-    DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
-    dataStore.put(commentEntity);
+    // Store comment entity in datastore, or queue it to be stored in a later batch. Other
+    // instances learn about queued comments once they are stored.
+    Long sharedGeneration = null;
+    if(writeQueue != null){
+      if(!enqueue(writeQueue, commentEntity)){
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many comments waiting to be stored");
+        return;
+      }
+    }else{
+      DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+      dataStore.put(commentEntity);
+      sharedGeneration = CommentGeneration.increment();
+    }
+    commentCache.add(commentEntity, sharedGeneration);
+    commentIndex.add(commentEntity, sharedGeneration);
+    CommentBroadcaster.getInstance().commentAdded(commentEntity);
 
     response.sendRedirect("/index.html");
   }    
 
   /**
-   * Getting comments from database, sorting them by time, and writing them to the /data
-   * page in json format.   
+   * Getting a page of comments from database, sorting them by time, and writing them to the /data
+   * page in json format along with the cursor of the following page.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -115,6 +558,21 @@ public class DataServlet extends HttpServlet {
       currentUser = userService.getCurrentUser().getEmail();
     }
 
+    // Returning only changes after a timestamp if one is given.
+    String sinceParam = request.getParameter("since");
+    if(sinceParam != null){
+      long since;
+      try{
+        since = Long.parseLong(sinceParam);
+      }catch(NumberFormatException e){
+        System.err.println("Could not parse since timestamp");
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        return;
+      }
+      writeChanges(response, since, currentUser);
+      return;
+    }
+
     // Parsing max amount of comments to be retrieved.
     int maxComm;
     try{
@@ -123,12 +581,52 @@ public class DataServlet extends HttpServlet {
       System.err.println("Could not parse maximum number of comments");
       return;
     }
+    if(maxComm <= 0){
+      System.err.println("Maximum number of comments must be positive");
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    // Searching comments instead of listing them if a query is given.
+    String cursorParam = request.getParameter("cursor");
+    String searchQuery = request.getParameter("q");
+    if(searchQuery != null){
+      writeSearchResults(response, searchQuery, cursorParam, maxComm, currentUser);
+      return;
+    }
+
+    // Parsing the optional cursor of the page to be retrieved.
+    Cursor startCursor = null;
+    if(cursorParam != null && !cursorParam.isEmpty()){
+      try{
+        startCursor = Cursor.fromWebSafeString(cursorParam);
+      }catch(IllegalArgumentException e){
+        System.err.println("Could not parse comment cursor");
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        return;
+      }
+    }
     
-    //Retrieving comments and returning them as a JSON string.
-    response.setContentType("application/json;");
+    //Retrieving a page of comments and streaming it as JSON. Pages served from the cache
+    // carry an entity tag so unchanged pages aren't sent again.
     Query commentQuery = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
-    String json = getJson(commentQuery, maxComm, currentUser);
-    response.getWriter().println(json);
+    List<CommentCache.Entry> cachedPage = null;
+    long generation = commentCache.getGeneration();
+    if(startCursor == null){
+      cachedPage = getCachedPage(commentQuery, maxComm);
+    }
+    if(cachedPage != null){
+      String nextCursor = getNextCursor(cachedPage, maxComm);
+      if(ETags.handleConditionalGet(request, response, getETag(cachedPage, nextCursor, currentUser))){
+        return;
+      }
+      response.setContentType("application/json;charset=UTF-8");
+      writeCachedJson(response.getOutputStream(), cachedPage, generation, maxComm, nextCursor, currentUser);
+      return;
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    writePage(response.getOutputStream(), commentQuery, maxComm, startCursor, currentUser);
   }
 
 }
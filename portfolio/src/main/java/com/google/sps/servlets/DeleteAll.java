@@ -14,19 +14,31 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.gson.Gson;
-import com.google.sps.data.Comment;
+import com.google.sps.data.CommentBroadcaster;
+import com.google.sps.data.CommentCache;
+import com.google.sps.data.CommentGeneration;
+import com.google.sps.data.CommentIndex;
+import com.google.sps.data.CommentWriteQueue;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import java.io.IOException;
 import java.util.List;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -35,19 +47,77 @@ import javax.servlet.http.HttpServletResponse;
 /* Servlet that deletes all comments. */
 @WebServlet("/delete-all")
 public class DeleteAll extends HttpServlet{
+  // Number of keys removed by a single batch delete call.
+  private static final int DELETE_BATCH_SIZE = 500;
+
+  // Number of batch delete calls allowed to run at the same time.
+  private static final int MAX_PENDING_BATCHES = 4;
   
   /**
-   * Handling POST request to delete all the comment entities on the database 
+   * Handling POST request to delete all the comment entities on the database. Only keys are
+   * queried, and they are deleted in batches with several batches in flight at once.
+   * Responds with the number of deleted comments and how long it took.
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    //Retrieving comments from database.
-    Query commentQuery = new Query("Comment");
+    long startTime = System.currentTimeMillis();
+    if(CommentWriteQueue.isEnabled()){
+      CommentWriteQueue.getInstance().cancelAll();
+    }
+
+    //Retrieving comment keys from database.
+    Query commentQuery = new Query("Comment").setKeysOnly();
     DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+    AsyncDatastoreService asyncDataStore = DatastoreServiceFactory.getAsyncDatastoreService();
     PreparedQuery prepCommentQuery = dataStore.prepare(commentQuery);
+
+    Deque<Future<Void>> pendingDeletes = new ArrayDeque<>();
+    List<Key> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+    long deleted = 0;
      
-    for(Entity comment:prepCommentQuery.asIterable()){
-      dataStore.delete(comment.getKey());  
+    for(Entity comment:prepCommentQuery.asIterable(FetchOptions.Builder.withChunkSize(DELETE_BATCH_SIZE))){
+      batch.add(comment.getKey());
+      if(batch.size() == DELETE_BATCH_SIZE){
+        // Waiting for the oldest batch before starting a new one if too many are in flight.
+        if(pendingDeletes.size() == MAX_PENDING_BATCHES){
+          waitFor(pendingDeletes.removeFirst());
+        }
+        pendingDeletes.addLast(asyncDataStore.delete(batch));
+        deleted += batch.size();
+        batch = new ArrayList<>(DELETE_BATCH_SIZE);
+      }
+    }
+    if(!batch.isEmpty()){
+      pendingDeletes.addLast(asyncDataStore.delete(batch));
+      deleted += batch.size();
+    }
+    while(!pendingDeletes.isEmpty()){
+      waitFor(pendingDeletes.removeFirst());
+    }
+    // Leaving a single tombstone telling clients syncing changes that everything is gone.
+    CommentTombstones.putAll(dataStore);
+
+    Long sharedGeneration = CommentGeneration.increment();
+    CommentCache.getInstance().invalidate();
+    CommentIndex.getInstance().clear(sharedGeneration);
+    CommentBroadcaster.getInstance().commentsCleared();
+
+    Map<String, Long> result = new LinkedHashMap<>();
+    result.put("deleted", deleted);
+    result.put("elapsedMillis", System.currentTimeMillis() - startTime);
+    response.setContentType("application/json;");
+    response.getWriter().println(new Gson().toJson(result));
+  }
+
+  // Blocks until a batch delete finishes, reporting datastore failures as IOExceptions.
+  private static void waitFor(Future<Void> pendingDelete) throws IOException {
+    try{
+      pendingDelete.get();
+    }catch(ExecutionException e){
+      throw new IOException("Could not delete comments", e.getCause());
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while deleting comments", e);
     }
   }
 }
@@ -21,7 +21,11 @@ import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.gson.Gson;
-import com.google.sps.data.Comment;
+import com.google.sps.data.CommentBroadcaster;
+import com.google.sps.data.CommentCache;
+import com.google.sps.data.CommentGeneration;
+import com.google.sps.data.CommentIndex;
+import com.google.sps.data.CommentWriteQueue;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import java.io.IOException;
@@ -41,9 +45,22 @@ public class DeleteComment extends HttpServlet{
   public void doPost(HttpServletRequest request, HttpServletResponse response){
     long id = Long.parseLong(request.getParameter("id"));
 
+    // Cancelling a queued copy first. Once it is cancelled a flush that stores it deletes
+    // it again, while cancelling after the delete below could let a flush store it for good.
+    if(CommentWriteQueue.isEnabled()){
+      CommentWriteQueue.getInstance().cancel(id);
+    }
+
     Key commentEntityKey = KeyFactory.createKey("Comment", id);
     DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     datastore.delete(commentEntityKey);
+
+    // Leaving a tombstone so clients syncing changes learn about the deletion.
+    CommentTombstones.put(datastore, id);
+    Long sharedGeneration = CommentGeneration.increment();
+    CommentCache.getInstance().remove(id, sharedGeneration);
+    CommentIndex.getInstance().remove(id, sharedGeneration);
+    CommentBroadcaster.getInstance().commentDeleted(id);
   }
 }
 
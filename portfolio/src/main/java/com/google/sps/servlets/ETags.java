@@ -0,0 +1,50 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Helpers for answering conditional GET requests with strong entity tags.
+ */
+final class ETags{
+  private ETags(){}
+
+  /**
+   * Sets the ETag header of the response and, if the request's If-None-Match header
+   * already names that tag, answers with 304 Not Modified. Returns true if the response
+   * is complete and no body should be written.
+   */
+  static boolean handleConditionalGet(HttpServletRequest request, HttpServletResponse response, String etag){
+    String quotedTag = "\"" + etag + "\"";
+    response.setHeader("ETag", quotedTag);
+    // Clients must check with the server before reusing their copy.
+    response.setHeader("Cache-Control", "no-cache");
+
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if(ifNoneMatch == null){
+      return false;
+    }
+    for(String candidate : ifNoneMatch.split(",")){
+      candidate = candidate.trim();
+      if(candidate.equals("*") || candidate.equals(quotedTag)){
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+      }
+    }
+    return false;
+  }
+}
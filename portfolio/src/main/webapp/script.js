@@ -12,122 +12,250 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
-// Load the Visualization API and the corechart package.
-google.charts.load('current', {'packages':['corechart']});
+// Load the Visualization API and the corechart package. The chart is drawn once both
+// the API and the page data have arrived.
+const chartsLoaded = google.charts.load('current', {'packages':['corechart']});
 
-// Set a callback to run when the Google Visualization API is loaded.
-google.charts.setOnLoadCallback(drawChart);
+// Cursor pointing at the next page of comments, if there is one.
+let nextCommentCursor = null;
+
+// Email of the logged in user as reported with the last page of comments.
+let commentViewer = '';
+
+// Event stream pushing comment changes made by anyone, on servers that can stream.
+let commentStream = null;
+
+// How often comment changes are fetched when the server can't stream them.
+const COMMENT_POLL_MILLIS = 10000;
+
+// Timer of the next comment change poll.
+let commentPollTimer = null;
+
+// Server time to fetch comment changes from.
+let commentSince = 0;
+
+// Time all comments were last deleted, as reported by comment change polls.
+let commentsClearedAt = null;
 
 
 /**
- * Fetches chart data from servlet and displays corresponding line charts. 
+ * Displays the chart data as line charts.
  */
-function drawChart(){
-  fetch('/chart-data').then(response => response.json()).then((transientResponse)=>{
-   
-    const responseData = new google.visualization.DataTable();
-    const residualData = new google.visualization.DataTable();
-    
-    responseData.addColumn('number', 'Time (ms)');
-    responseData.addColumn('number', 'Experimental Amplitude (Volts)');
-    responseData.addColumn('number', 'Theoretical Amplitude (Volts)');
-
-    residualData.addColumn('number', 'Time (ms)');
-    residualData.addColumn('number', 'Residual(Volts)');
-
-    theoryData = transientResponse[0]
-    experimentalData = transientResponse[1]
-    residuals = transientResponse[2]
-
-    Object.keys(theoryData).forEach((timeStep) => {
-      responseData.addRow([parseFloat(timeStep), parseFloat(experimentalData[timeStep]), parseFloat(theoryData[timeStep])]);
-      residualData.addRow([parseFloat(timeStep), parseFloat(residuals[timeStep])]);
-    });
-
-    const responseOptions = {
-      'title': 'Transient Response of an RLC Circuit',
-      'legend': {'position':'bottom'},
-      'width': 350,
-      'vAxis': {'title':'Amplitude (Volts)'},
-      'hAxis': {'title':'Time (ms)'}
-    }
+function drawChart(transientResponse){
+  const responseData = new google.visualization.DataTable();
+  const residualData = new google.visualization.DataTable();
+  
+  responseData.addColumn('number', 'Time (ms)');
+  responseData.addColumn('number', 'Experimental Amplitude (Volts)');
+  responseData.addColumn('number', 'Theoretical Amplitude (Volts)');
 
-    const residualOptions = { 
-      'title': 'Residuals',
-      'legend': {'position':'bottom'},
-      'width': 350,
-      'vAxis': {'title':'Amplitude (Volts)'},
-      'hAxis': {'title':'Time (ms)'}
-    }
+  residualData.addColumn('number', 'Time (ms)');
+  residualData.addColumn('number', 'Residual(Volts)');
 
-    const responseChart = new google.visualization.LineChart(document.getElementById('response-chart-container'));
-    responseChart.draw(responseData, responseOptions);
+  theoryData = transientResponse[0]
+  experimentalData = transientResponse[1]
+  residuals = transientResponse[2]
 
-    const residualChart = new google.visualization.LineChart(document.getElementById('residual-chart-container'));
-    residualChart.draw(residualData, residualOptions);
+  Object.keys(theoryData).forEach((timeStep) => {
+    responseData.addRow([parseFloat(timeStep), parseFloat(experimentalData[timeStep]), parseFloat(theoryData[timeStep])]);
+    residualData.addRow([parseFloat(timeStep), parseFloat(residuals[timeStep])]);
   });
+
+  const responseOptions = {
+    'title': 'Transient Response of an RLC Circuit',
+    'legend': {'position':'bottom'},
+    'width': 350,
+    'vAxis': {'title':'Amplitude (Volts)'},
+    'hAxis': {'title':'Time (ms)'}
+  }
+
+  const residualOptions = { 
+    'title': 'Residuals',
+    'legend': {'position':'bottom'},
+    'width': 350,
+    'vAxis': {'title':'Amplitude (Volts)'},
+    'hAxis': {'title':'Time (ms)'}
+  }
+
+  const responseChart = new google.visualization.LineChart(document.getElementById('response-chart-container'));
+  responseChart.draw(responseData, responseOptions);
+
+  const residualChart = new google.visualization.LineChart(document.getElementById('residual-chart-container'));
+  residualChart.draw(residualData, residualOptions);
 }  
 
 /**
  * Adds comments and appropraite header to the page
  */
 function setUpPage(){
-  // Setting up login sensitive elements.
-  setLogin();
-  
   //Getting number of comments to display
   const commentNumSelectEl = document.getElementById('comments-dropdown');
   maxComments =  commentNumSelectEl.value;  
-  
-  //Retrieving and displaying specified number of comments
-  fetch('/data?maxComments='+maxComments).then(response => response.json()).then((comments) => {
+
+  // Retrieving login status, the first page of comments and the chart data in one request.
+  fetch('/bootstrap?maxComments='+maxComments).then(response => response.json()).then((pageData) => {
+    // Setting up login sensitive elements.
+    setLogin(pageData.login);
+
     const commentsList = document.getElementById('comments_list');
     commentsList.innerHTML = '';
-    for(i = 0; i < comments.length; i++){
-      comment = comments[i];
-      commentsList.appendChild(createCommentElem(comment));
+    showCommentPage(pageData.comments);
+
+    // Following comment changes, streamed if the server supports it and polled otherwise.
+    commentSince = pageData.since;
+    if(pageData.commentStream){
+      listenForComments();
+    }else{
+      pollForComments();
     }
+
+    // The chart is null if its data couldn't be loaded; the rest of the page still works.
+    if(pageData.chart){
+      chartsLoaded.then(() => drawChart(pageData.chart));
+    }
+  });
+}
+
+/**
+ * Replaces the comment list with the first page of comments.
+ */
+function getComments(){
+  const maxComments = document.getElementById('comments-dropdown').value;
+  fetch('/data?maxComments=' + maxComments).then(response => response.json()).then((page) => {
+    document.getElementById('comments_list').innerHTML = '';
+    showCommentPage(page);
   });
 }
 
+/**
+ * Appends the next page of comments to the comment list.
+ */
+function loadMoreComments(){
+  if(!nextCommentCursor){
+    return;
+  }
+  const maxComments = document.getElementById('comments-dropdown').value;
+  fetch('/data?maxComments=' + maxComments + '&cursor=' + encodeURIComponent(nextCommentCursor))
+      .then(response => response.json()).then(showCommentPage);
+}
 
 /**
- * Gets the login status of user and displays correct information in page header
- * and displays comments if user is logged in.
+ * Adds a page of comments to the comment list and remembers where the next page starts.
  */
-function setLogin(){
-  fetch('/loginStat').then(response => response.json()).then((login_status) => {
-    const loginLink = document.getElementById('login-link');
-    if(login_status.userStatus === "True"){
-      // Showing comments and welcome message if user is logged in.
-      document.getElementById('inner-comments-container').style.display = "block";
-      loginLink.innerText = 'Welcome, ' + login_status.userEmail;
-
-      // Adding logout link to header to let the user end their session.
-      loginLink.href = "/logout"
-    }else{
-      // Showing user a request to log in to enable comments.
-      const loginRequestEl = document.createElement('p');
-      loginRequestEl.innerText = "Please log in to access comments"
-      document.getElementById('comments-container').appendChild(loginRequestEl);
-
-      // Hiding comments.
-      document.getElementById('inner-comments-container').style.display = "none";
-
-      // Adding login link to header.
-      loginLink.innerText = 'Login';
-      loginLink.href = "/login"
-    } 
+function showCommentPage(page){
+  const commentsList = document.getElementById('comments_list');
+  for(i = 0; i < page.comments.length; i++){
+    comment = page.comments[i];
+    commentsList.appendChild(createCommentElem(comment, page.viewer));
+  }
+  nextCommentCursor = page.nextCursor;
+  commentViewer = page.viewer;
+  document.getElementById('more-comments').style.display = nextCommentCursor ? "inline" : "none";
+}
+
+
+/**
+ * Opens the comment event stream once so new and deleted comments show up without reloading.
+ */
+function listenForComments(){
+  if(commentStream || !window.EventSource){
+    return;
+  }
+  commentStream = new EventSource('/data/stream');
+  commentStream.addEventListener('comment', (event) => addComment(JSON.parse(event.data)));
+  commentStream.addEventListener('delete', (event) => removeComment(JSON.parse(event.data).id));
+  commentStream.addEventListener('clear', () => {
+    document.getElementById('comments_list').innerHTML = '';
   });
 }
 
 /**
- * Creates an HTML comment element
+ * Fetches comment changes every few seconds, for servers that can't stream them.
+ */
+function pollForComments(){
+  if(commentPollTimer){
+    return;
+  }
+  const poll = () => {
+    fetch('/data?since=' + commentSince).then(response => response.json()).then(applyCommentChanges)
+        .catch((error) => console.error('Could not fetch comment changes', error))
+        .finally(() => commentPollTimer = setTimeout(poll, COMMENT_POLL_MILLIS));
+  };
+  commentPollTimer = setTimeout(poll, COMMENT_POLL_MILLIS);
+}
+
+/**
+ * Applies comment changes to the comment list, reloading the comments if they can't be
+ * patched. Changes may repeat ones already applied.
+ */
+function applyCommentChanges(changes){
+  commentSince = changes.nextSince;
+  if(changes.reset || (changes.clearedAt && changes.clearedAt !== commentsClearedAt)){
+    commentsClearedAt = changes.clearedAt || commentsClearedAt;
+    getComments();
+    return;
+  }
+  // Adding the oldest first so the newest ends up on top.
+  changes.comments.slice().reverse().forEach(addComment);
+  changes.deleted.forEach(removeComment);
+}
+
+/**
+ * Adds a new comment to the top of the comment list unless it is already shown.
+ */
+function addComment(comment){
+  const commentsList = document.getElementById('comments_list');
+  if(!commentsList.querySelector('[data-id="' + comment.id + '"]')){
+    commentsList.insertBefore(createCommentElem(comment, commentViewer), commentsList.firstChild);
+  }
+}
+
+/**
+ * Removes a deleted comment from the comment list if it is shown.
+ */
+function removeComment(id){
+  const commentElem = document.querySelector('#comments_list [data-id="' + id + '"]');
+  if(commentElem){
+    commentElem.remove();
+  }
+}
+
+/**
+ * Displays correct information in page header for the login status of the user
+ * and displays comments if user is logged in.
+ */
+function setLogin(login_status){
+  const loginLink = document.getElementById('login-link');
+  if(login_status.userStatus === "True"){
+    // Showing comments and welcome message if user is logged in.
+    document.getElementById('inner-comments-container').style.display = "block";
+    loginLink.innerText = 'Welcome, ' + login_status.userEmail;
+
+    // Adding logout link to header to let the user end their session.
+    loginLink.href = "/logout"
+  }else{
+    // Showing user a request to log in to enable comments.
+    const loginRequestEl = document.createElement('p');
+    loginRequestEl.innerText = "Please log in to access comments"
+    document.getElementById('comments-container').appendChild(loginRequestEl);
+
+    // Hiding comments.
+    document.getElementById('inner-comments-container').style.display = "none";
+
+    // Adding login link to header.
+    loginLink.innerText = 'Login';
+    loginLink.href = "/login"
+  } 
+}
+
+/**
+ * Creates an HTML comment element, with a delete button if the viewer wrote it
  */
-function createCommentElem(comment){
+function createCommentElem(comment, viewer){
   // Creating comment list element
   const liElement = document.createElement('li');
   liElement.classList.add("comment");
+  liElement.dataset.id = comment.id;
   
   // Creating comment content element.
   const contentElem = document.createElement('p');
@@ -140,7 +268,7 @@ function createCommentElem(comment){
   liElement.appendChild(nameElem);
   liElement.appendChild(contentElem);
   
-  if(comment.userEmail === comment.currentUserEmail){ 
+  if(comment.userEmail === viewer){ 
     const deleteButton = document.createElement('button');
     deleteButton.innerText = 'Delete'
     deleteButton.addEventListener('click', () => {
@@ -169,8 +297,7 @@ function deleteComment(comment){
  * Deletes all comments from the webpage
  */
 function deleteAllComments(){
-  fetch('/delete-all', {method: 'POST'})
-  setUpPage();
+  fetch('/delete-all', {method: 'POST'}).then(() => setUpPage());
 }
 
 
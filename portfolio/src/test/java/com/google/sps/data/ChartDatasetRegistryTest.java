@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ChartDatasetRegistryTest{
+  private static final int SIZE = 1000;
+
+  @Test
+  public void evictsWhenViewsGrowPastBudget() throws IOException {
+    long datasetBytes = createDataset().getMemoryUsage();
+    ChartDatasetRegistry registry = new ChartDatasetRegistry(name -> createDataset(), 2 * datasetBytes + 1024);
+    registry.get("first");
+    ChartDataset second = registry.get("second");
+    Assert.assertEquals(2, registry.getSize());
+
+    second.getDownsampled(SIZE / 2, 0, SIZE);
+
+    Assert.assertEquals(1, registry.getSize());
+    Assert.assertTrue(registry.getLoadedNames().contains("second"));
+  }
+
+  @Test
+  public void dropsCachedChartsOfDatasetOverBudget() throws IOException {
+    long datasetBytes = createDataset().getMemoryUsage();
+    ChartDatasetRegistry registry = new ChartDatasetRegistry(name -> createDataset(), datasetBytes + 1024);
+    ChartDataset dataset = registry.get("only");
+
+    dataset.getDownsampled(SIZE / 2, 0, SIZE);
+    dataset.getSpectrum();
+
+    Assert.assertEquals(1, registry.getSize());
+    Assert.assertEquals(datasetBytes, registry.getMemoryUsage());
+  }
+
+  @Test
+  public void evictedDatasetsStopCheckingBudget() throws IOException {
+    long datasetBytes = createDataset().getMemoryUsage();
+    ChartDatasetRegistry registry = new ChartDatasetRegistry(name -> createDataset(), datasetBytes + 1024);
+    ChartDataset evicted = registry.get("first");
+    registry.get("second");
+
+    evicted.getDownsampled(SIZE / 2, 0, SIZE);
+
+    Assert.assertTrue(registry.getLoadedNames().contains("second"));
+    Assert.assertEquals(datasetBytes, registry.getMemoryUsage());
+  }
+
+  private static ChartDataset createDataset(){
+    double[] times = new double[SIZE];
+    double[] theory = new double[SIZE];
+    double[] experimental = new double[SIZE];
+    for(int i = 0; i < SIZE; i++){
+      times[i] = i;
+      theory[i] = Math.exp(-i / 100.0);
+      experimental[i] = theory[i] + 0.01 * Math.sin(i);
+    }
+    return new ChartDataset(times, theory, experimental);
+  }
+}
@@ -0,0 +1,207 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ChartDatasetTest{
+  private static final double[] THEORY_TIMES = {0, 1, 2, 4};
+  private static final double[] THEORY = {0, 10, 20, 0};
+
+  @Test
+  public void keepsSamplesThatLineUp(){
+    ChartDataset dataset = ChartDataset.align(new double[] {0, 1, 4}, new double[] {1, 9, 2},
+        THEORY_TIMES, THEORY);
+
+    assertSeries(new double[] {0, 1, 4}, new double[] {0, 10, 0}, new double[] {1, 9, 2}, dataset);
+  }
+
+  @Test
+  public void interpolatesBetweenTheorySamples(){
+    ChartDataset dataset = ChartDataset.align(new double[] {0.5, 1.25, 3}, new double[] {4, 14, 12},
+        THEORY_TIMES, THEORY);
+
+    assertSeries(new double[] {0.5, 1.25, 3}, new double[] {5, 12.5, 10}, new double[] {4, 14, 12}, dataset);
+    Assert.assertEquals(-1, dataset.getResidual(0), 1e-12);
+    Assert.assertEquals(1.5, dataset.getResidual(1), 1e-12);
+  }
+
+  @Test
+  public void dropsSamplesOutsideTheoryRange(){
+    ChartDataset dataset = ChartDataset.align(new double[] {-1, 0, 2, 4, 5}, new double[] {1, 2, 3, 4, 5},
+        THEORY_TIMES, THEORY);
+
+    assertSeries(new double[] {0, 2, 4}, new double[] {0, 20, 0}, new double[] {2, 3, 4}, dataset);
+  }
+
+  @Test
+  public void usesLastTheorySampleAtRepeatedTimes(){
+    // A step in the theoretical response, given as two samples at the same time.
+    ChartDataset dataset = ChartDataset.align(new double[] {0.5, 1, 1.5}, new double[] {0, 0, 0},
+        new double[] {0, 1, 1, 2}, new double[] {0, 0, 6, 8});
+
+    assertSeries(new double[] {0.5, 1, 1.5}, new double[] {0, 6, 7}, new double[] {0, 0, 0}, dataset);
+  }
+
+  @Test
+  public void emptyTheoryGivesEmptyDataset(){
+    ChartDataset dataset = ChartDataset.align(new double[] {0, 1}, new double[] {1, 2},
+        new double[0], new double[0]);
+
+    Assert.assertEquals(0, dataset.size());
+  }
+
+  @Test
+  public void fittedDatasetUsesFittedCurveAsTheory(){
+    int size = 500;
+    double[] times = new double[size];
+    double[] experimental = new double[size];
+    for(int i = 0; i < size; i++){
+      times[i] = i * 0.004;
+      experimental[i] = 1.9 * Math.exp(-1.5 * times[i]) * Math.cos(20 * times[i]) + 0.1;
+    }
+
+    ChartDataset dataset = ChartDataset.fitted(times, experimental);
+
+    Assert.assertEquals(size, dataset.size());
+    for(int i = 0; i < size; i++){
+      Assert.assertEquals(times[i], dataset.getTime(i), 0);
+      Assert.assertEquals(experimental[i], dataset.getTheory(i), 1e-6);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsortedExperimentalTimes(){
+    ChartDataset.align(new double[] {1, 0}, new double[] {1, 2}, THEORY_TIMES, THEORY);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsortedTheoryTimes(){
+    ChartDataset.align(new double[] {0, 1}, new double[] {1, 2}, new double[] {0, 2, 1}, new double[] {0, 1, 2});
+  }
+
+  @Test
+  public void downsamplingKeepsEndpointsAndRequestedCount(){
+    ChartDataset dataset = createWave(1000);
+
+    int[] picked = dataset.largestTriangleThreeBuckets(0, 1000, 50);
+
+    Assert.assertEquals(50, picked.length);
+    Assert.assertEquals(0, picked[0]);
+    Assert.assertEquals(999, picked[49]);
+    for(int i = 1; i < picked.length; i++){
+      Assert.assertTrue(picked[i - 1] < picked[i]);
+    }
+  }
+
+  @Test
+  public void downsamplingPicksOnePointPerBucket(){
+    ChartDataset dataset = createWave(1000);
+
+    int[] picked = dataset.largestTriangleThreeBuckets(0, 1000, 50);
+
+    // Points between the endpoints are split into 48 buckets of (1000 - 2) / 48 points.
+    double bucketSize = 998.0 / 48;
+    for(int bucket = 0; bucket < 48; bucket++){
+      Assert.assertTrue(picked[bucket + 1] >= 1 + (int)(bucket * bucketSize));
+      Assert.assertTrue(picked[bucket + 1] < 1 + (int)((bucket + 1) * bucketSize));
+    }
+  }
+
+  @Test
+  public void downsamplingKeepsSpikes(){
+    int size = 1000;
+    double[] times = new double[size];
+    double[] flat = new double[size];
+    double[] experimental = new double[size];
+    for(int i = 0; i < size; i++){
+      times[i] = i;
+    }
+    experimental[437] = 5;
+    ChartDataset dataset = new ChartDataset(times, flat, experimental);
+
+    int[] picked = dataset.largestTriangleThreeBuckets(0, size, 20);
+
+    Assert.assertTrue(Arrays.binarySearch(picked, 437) >= 0);
+  }
+
+  @Test
+  public void downsamplingHandlesSmallThresholdsAndRanges(){
+    ChartDataset dataset = createWave(100);
+
+    Assert.assertArrayEquals(new int[] {10}, dataset.largestTriangleThreeBuckets(10, 20, 1));
+    Assert.assertArrayEquals(new int[] {10, 19}, dataset.largestTriangleThreeBuckets(10, 20, 2));
+    Assert.assertArrayEquals(ChartDataset.range(10, 20), dataset.largestTriangleThreeBuckets(10, 20, 10));
+    int[] picked = dataset.largestTriangleThreeBuckets(10, 60, 5);
+    Assert.assertEquals(5, picked.length);
+    Assert.assertEquals(10, picked[0]);
+    Assert.assertEquals(59, picked[4]);
+  }
+
+  @Test
+  public void downsampledChartHasRequestedPointsAndIsCached(){
+    ChartDataset dataset = createWave(1000);
+
+    ChartDataset.EncodedChart view = dataset.getDownsampled(100, 0, 999);
+
+    Assert.assertEquals(100, getPointCount(view));
+    Assert.assertSame(view, dataset.getDownsampled(100, 0, 999));
+    Assert.assertSame(dataset.getEncoded(), dataset.getDownsampled(1000, 0, 999));
+    Assert.assertEquals(11, getPointCount(dataset.getDownsampled(100, 100, 110)));
+  }
+
+  @Test
+  public void statsAreEncodedOnceWithTheDataset(){
+    ChartDataset dataset = createWave(100);
+
+    Assert.assertSame(dataset.getEncodedStats(), dataset.getEncodedStats());
+    Assert.assertArrayEquals(dataset.getStats().encodeJson(1), dataset.getEncodedStats().getJson());
+  }
+
+  private static ChartDataset createWave(int size){
+    double[] times = new double[size];
+    double[] theory = new double[size];
+    double[] experimental = new double[size];
+    for(int i = 0; i < size; i++){
+      times[i] = i;
+      theory[i] = Math.exp(-i / 300.0) * Math.cos(i / 20.0);
+      experimental[i] = theory[i] + 0.05 * Math.sin(7919.0 * i);
+    }
+    return new ChartDataset(times, theory, experimental);
+  }
+
+  // Reads the number of values of the first series from the binary chart header.
+  private static int getPointCount(ChartDataset.EncodedChart chart){
+    ByteBuffer buffer = ByteBuffer.wrap(chart.getBinary()).order(ByteOrder.LITTLE_ENDIAN);
+    int nameLength = buffer.getInt(8);
+    return buffer.getInt(12 + nameLength);
+  }
+
+  private static void assertSeries(double[] times, double[] theory, double[] experimental, ChartDataset dataset){
+    Assert.assertEquals(times.length, dataset.size());
+    for(int i = 0; i < times.length; i++){
+      Assert.assertEquals(times[i], dataset.getTime(i), 0);
+      Assert.assertEquals(theory[i], dataset.getTheory(i), 1e-12);
+      Assert.assertEquals(experimental[i], dataset.getExperimental(i), 0);
+    }
+  }
+}
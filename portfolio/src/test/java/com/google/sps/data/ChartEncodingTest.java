@@ -0,0 +1,154 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ChartEncodingTest{
+  private static final String[] SERIES = {"time", "theory", "experimental", "residual"};
+
+  @Test
+  public void binaryHeaderDescribesColumns(){
+    ChartDataset dataset = createDataset(37);
+
+    ByteBuffer buffer = ByteBuffer.wrap(dataset.encodeBinary(ChartDataset.range(0, 37)))
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    byte[] magic = new byte[4];
+    buffer.get(magic);
+    Assert.assertEquals("SPSC", new String(magic, StandardCharsets.US_ASCII));
+    Assert.assertEquals(SERIES.length, buffer.getInt());
+    for(String series : SERIES){
+      byte[] name = new byte[buffer.getInt()];
+      buffer.get(name);
+      Assert.assertEquals(series, new String(name, StandardCharsets.UTF_8));
+      Assert.assertEquals(37, buffer.getInt());
+    }
+    int headerLength = buffer.position();
+    int paddedLength = (headerLength + 7) / 8 * 8;
+    while(buffer.position() < paddedLength){
+      Assert.assertEquals(0, buffer.get());
+    }
+    Assert.assertEquals(paddedLength + SERIES.length * 37 * Double.BYTES, buffer.capacity());
+  }
+
+  @Test
+  public void binaryColumnsRoundTrip(){
+    ChartDataset dataset = createDataset(50);
+
+    double[][] columns = decodeBinary(dataset.encodeBinary(ChartDataset.range(0, 50)));
+
+    for(int i = 0; i < 50; i++){
+      Assert.assertEquals(dataset.getTime(i), columns[0][i], 0);
+      Assert.assertEquals(dataset.getTheory(i), columns[1][i], 0);
+      Assert.assertEquals(dataset.getExperimental(i), columns[2][i], 0);
+      Assert.assertEquals(dataset.getResidual(i), columns[3][i], 0);
+    }
+  }
+
+  @Test
+  public void binaryAgreesWithJson(){
+    ChartDataset dataset = createDataset(200);
+
+    // Every point, copied in bulk, and a subset, copied point by point.
+    for(int[] indices : new int[][] {ChartDataset.range(0, 200), {0, 3, 4, 50, 120, 199}}){
+      double[][] columns = decodeBinary(dataset.encodeBinary(indices));
+      JsonArray json = parseJson(dataset.encodeJson(indices));
+
+      Assert.assertEquals(3, json.size());
+      for(int series = 0; series < 3; series++){
+        int i = 0;
+        for(Map.Entry<String, JsonElement> point : json.get(series).getAsJsonObject().entrySet()){
+          Assert.assertEquals(columns[0][i], Double.parseDouble(point.getKey()), 0);
+          Assert.assertEquals(columns[series + 1][i], point.getValue().getAsDouble(), 0);
+          i++;
+        }
+        Assert.assertEquals(indices.length, i);
+      }
+    }
+  }
+
+  @Test
+  public void jsonMatchesGsonMaps(){
+    ChartDataset dataset = createDataset(100);
+
+    // The servlet used to write three maps from time to value through Gson.
+    LinkedHashMap<Double, Double> theory = new LinkedHashMap<>();
+    LinkedHashMap<Double, Double> experimental = new LinkedHashMap<>();
+    LinkedHashMap<Double, Double> residuals = new LinkedHashMap<>();
+    for(int i = 0; i < dataset.size(); i++){
+      theory.put(dataset.getTime(i), dataset.getTheory(i));
+      experimental.put(dataset.getTime(i), dataset.getExperimental(i));
+      residuals.put(dataset.getTime(i), dataset.getResidual(i));
+    }
+    Gson gson = new Gson();
+    String expected = "[" + gson.toJson(theory) + "," + gson.toJson(experimental) + ","
+        + gson.toJson(residuals) + "]";
+
+    Assert.assertEquals(parseJson(expected.getBytes(StandardCharsets.UTF_8)),
+        parseJson(dataset.encodeJson(ChartDataset.range(0, 100))));
+  }
+
+  private static ChartDataset createDataset(int size){
+    double[] times = new double[size];
+    double[] fit = new double[size];
+    double[] measured = new double[size];
+    for(int i = 0; i < size; i++){
+      times[i] = i * 0.002;
+      fit[i] = 1.9 * Math.exp(-1.5 * times[i]) * Math.cos(101 * times[i]);
+      measured[i] = fit[i] + 0.01 * Math.sin(7919.0 * i);
+    }
+    return new ChartDataset(times, fit, measured);
+  }
+
+  // Decodes the time, theory, experimental and residual columns of a binary chart.
+  private static double[][] decodeBinary(byte[] binary){
+    ByteBuffer buffer = ByteBuffer.wrap(binary).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.position(4);
+    int seriesCount = buffer.getInt();
+    int count = 0;
+    for(int series = 0; series < seriesCount; series++){
+      int nameLength = buffer.getInt();
+      buffer.position(buffer.position() + nameLength);
+      count = buffer.getInt();
+    }
+    buffer.position((buffer.position() + 7) / 8 * 8);
+    double[][] columns = new double[seriesCount][count];
+    for(double[] column : columns){
+      for(int i = 0; i < count; i++){
+        column[i] = buffer.getDouble();
+      }
+    }
+    return columns;
+  }
+
+  private static JsonArray parseJson(byte[] json){
+    return new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonArray();
+  }
+}
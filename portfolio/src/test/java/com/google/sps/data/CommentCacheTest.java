@@ -0,0 +1,230 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CommentCacheTest{
+  private static final long MAX_AGE_MILLIS = 60000;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+  @Before
+  public void setUp(){
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown(){
+    helper.tearDown();
+  }
+
+  @Test
+  public void missesUntilLoaded(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+
+    Assert.assertNull(cache.getPage(2));
+    Assert.assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void servesPagesOfLoadedComments(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), false, cache.getGeneration(), CommentGeneration.get());
+
+    assertIds(cache.getPage(2), 30, 20);
+    Assert.assertFalse(cache.isLastPage(cache.getPage(3)));
+    Assert.assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void completeCacheAnswersShortPages(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(20, 10), true, cache.getGeneration(), CommentGeneration.get());
+
+    List<CommentCache.Entry> page = cache.getPage(3);
+
+    assertIds(page, 20, 10);
+    Assert.assertTrue(cache.isLastPage(page));
+  }
+
+  @Test
+  public void incompleteCacheCantAnswerShortPages(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(20, 10), false, cache.getGeneration(), CommentGeneration.get());
+
+    Assert.assertNull(cache.getPage(3));
+  }
+
+  @Test
+  public void neverAnswersPagesLargerThanCapacity(){
+    CommentCache cache = new CommentCache(2, MAX_AGE_MILLIS, 0);
+    cache.load(entries(20, 10), true, cache.getGeneration(), CommentGeneration.get());
+
+    Assert.assertNull(cache.getPage(3));
+  }
+
+  @Test
+  public void addedCommentsKeepTimestampOrderAndCapacity(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 10, 5), false, cache.getGeneration(), CommentGeneration.get());
+
+    cache.add(comment(20), null);
+
+    Assert.assertEquals(3, cache.getSize());
+    Assert.assertEquals(20L, cache.peekPage(3).get(1).getEntity().getKey().getId());
+  }
+
+  @Test
+  public void addedCommentWithoutCursorEndsCachedPages(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), false, cache.getGeneration(), CommentGeneration.get());
+
+    cache.add(comment(15), null);
+
+    // The new comment was never read from the datastore, so no page can end with it.
+    Assert.assertNull(cache.getPage(3));
+    assertIds(cache.getPage(2), 30, 20);
+  }
+
+  @Test
+  public void removesDeletedComments(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), CommentGeneration.get());
+
+    cache.remove(20, null);
+
+    assertIds(cache.getPage(3), 30, 10);
+  }
+
+  @Test
+  public void discardsLoadsThatRacedWithAWrite(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    long generation = cache.getGeneration();
+
+    cache.remove(20, null);
+    cache.load(entries(30, 20, 10), true, generation, CommentGeneration.get());
+
+    Assert.assertNull(cache.getPage(1));
+  }
+
+  @Test
+  public void dropsEncodedPagesOnChange(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), CommentGeneration.get());
+    cache.putEncodedPage(2, cache.getGeneration(), new byte[] {1});
+    Assert.assertArrayEquals(new byte[] {1}, cache.getEncodedPage(2));
+
+    cache.add(comment(40), null);
+
+    Assert.assertNull(cache.getEncodedPage(2));
+  }
+
+  @Test
+  public void reloadsWhenAnotherInstanceChangesComments(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), CommentGeneration.get());
+
+    CommentGeneration.increment();
+
+    Assert.assertNull(cache.getPage(1));
+  }
+
+  @Test
+  public void staysLoadedAfterItsOwnChanges(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), CommentGeneration.get());
+
+    cache.remove(20, CommentGeneration.increment());
+
+    assertIds(cache.getPage(2), 30, 10);
+  }
+
+  @Test
+  public void reloadsAfterTwoChangesEvenIfOneIsItsOwn(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), CommentGeneration.get());
+
+    CommentGeneration.increment();
+    cache.remove(20, CommentGeneration.increment());
+
+    Assert.assertNull(cache.getPage(1));
+  }
+
+  @Test
+  public void reloadsOnceTooOld(){
+    CommentCache cache = new CommentCache(3, -1, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), null);
+
+    Assert.assertNull(cache.getPage(1));
+  }
+
+  @Test
+  public void reloadsWhenLoadedWithUnknownGeneration(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 0);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), null);
+
+    Assert.assertNull(cache.getPage(1));
+  }
+
+  @Test
+  public void checksGenerationAtMostOncePerInterval(){
+    CommentCache cache = new CommentCache(3, MAX_AGE_MILLIS, 60000);
+    cache.load(entries(30, 20, 10), true, cache.getGeneration(), CommentGeneration.get());
+    Assert.assertNotNull(cache.getPage(1));
+
+    CommentGeneration.increment();
+
+    // The change is only noticed at the next check.
+    Assert.assertNotNull(cache.getPage(1));
+  }
+
+  // Cache entries with cursors for comments whose id is also their timestamp.
+  private static List<CommentCache.Entry> entries(long... ids){
+    List<CommentCache.Entry> entries = new ArrayList<>();
+    for(long id : ids){
+      entries.add(new CommentCache.Entry(comment(id), "cursor-" + id));
+    }
+    return entries;
+  }
+
+  private static Entity comment(long id){
+    Entity commentEntity = new Entity("Comment", id);
+    commentEntity.setProperty("timestamp", id);
+    commentEntity.setProperty("content", "comment " + id);
+    return commentEntity;
+  }
+
+  private static void assertIds(List<CommentCache.Entry> page, long... ids){
+    Assert.assertNotNull(page);
+    long[] actual = new long[page.size()];
+    for(int i = 0; i < actual.length; i++){
+      actual[i] = page.get(i).getEntity().getKey().getId();
+    }
+    Assert.assertEquals(Arrays.toString(ids), Arrays.toString(actual));
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CommentGenerationTest{
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+  @Before
+  public void setUp(){
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown(){
+    helper.tearDown();
+  }
+
+  @Test
+  public void startsAtZeroAndCountsChanges(){
+    Assert.assertEquals(Long.valueOf(0), CommentGeneration.get());
+    Assert.assertEquals(Long.valueOf(1), CommentGeneration.increment());
+    Assert.assertEquals(Long.valueOf(2), CommentGeneration.increment());
+    Assert.assertEquals(Long.valueOf(2), CommentGeneration.get());
+  }
+
+  @Test
+  public void followsOnlyTheNextGeneration(){
+    Assert.assertTrue(CommentGeneration.follows(4L, 5L));
+    Assert.assertFalse(CommentGeneration.follows(4L, 4L));
+    Assert.assertFalse(CommentGeneration.follows(4L, 6L));
+    Assert.assertFalse(CommentGeneration.follows(null, 5L));
+    Assert.assertFalse(CommentGeneration.follows(4L, null));
+  }
+
+  @Test
+  public void checkReadsAtMostOncePerInterval(){
+    CommentGeneration.Check check = new CommentGeneration.Check(60000);
+
+    Assert.assertEquals(Long.valueOf(0), check.poll());
+    CommentGeneration.increment();
+    Assert.assertNull(check.poll());
+  }
+
+  @Test
+  public void checkWithoutIntervalReadsEveryTime(){
+    CommentGeneration.Check check = new CommentGeneration.Check(0);
+
+    Assert.assertEquals(Long.valueOf(0), check.poll());
+    CommentGeneration.increment();
+    Assert.assertEquals(Long.valueOf(1), check.poll());
+  }
+}
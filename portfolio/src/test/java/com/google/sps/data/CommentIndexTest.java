@@ -0,0 +1,206 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CommentIndexTest{
+  private static final long MAX_AGE_MILLIS = 60000;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig());
+
+  // Rebuilds scheduled by the index, run when the test says so.
+  private final List<Runnable> rebuilds = new ArrayList<>();
+
+  private CommentIndex index;
+
+  @Before
+  public void setUp(){
+    helper.setUp();
+    index = new CommentIndex(MAX_AGE_MILLIS, 0, rebuilds::add);
+  }
+
+  @After
+  public void tearDown(){
+    helper.tearDown();
+  }
+
+  @Test
+  public void tokenizesIntoLowerCaseWordsOfLettersAndDigits(){
+    Assert.assertEquals(Arrays.asList("hello", "world", "it", "s", "2020", "café"),
+        new ArrayList<>(CommentIndex.tokenize("Hello, WORLD! it's 2020 -- Café hello")));
+    Assert.assertTrue(CommentIndex.tokenize(null).isEmpty());
+  }
+
+  @Test
+  public void findsCommentsWithEveryWordNewestFirst(){
+    index.add(comment(1, "red green blue"), null);
+    index.add(comment(2, "red blue"), null);
+    index.add(comment(3, "red"), null);
+    index.add(comment(4, "Blue, RED!"), null);
+
+    assertIds(index.search("blue red", null, 10), 4, 2, 1);
+    assertIds(index.search("green", null, 10), 1);
+    assertIds(index.search("red purple", null, 10));
+    assertIds(index.search("  ", null, 10));
+  }
+
+  @Test
+  public void pagesThroughResultsWithCursors(){
+    for(long id = 1; id <= 5; id++){
+      index.add(comment(id, "word " + id), null);
+    }
+
+    CommentIndex.SearchPage first = index.search("word", null, 2);
+    assertIds(first, 5, 4);
+    CommentIndex.SearchPage second = index.search("word", first.getNextCursor(), 2);
+    assertIds(second, 3, 2);
+    CommentIndex.SearchPage last = index.search("word", second.getNextCursor(), 2);
+    assertIds(last, 1);
+    Assert.assertNull(last.getNextCursor());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedCursors(){
+    index.add(comment(1, "word"), null);
+    index.search("word", "bm9wZQ", 2);
+  }
+
+  @Test
+  public void removedCommentsLeaveTheirWords(){
+    index.add(comment(1, "shared only"), null);
+    index.add(comment(2, "shared"), null);
+
+    index.remove(1, null);
+
+    assertIds(index.search("shared", null, 10), 2);
+    assertIds(index.search("only", null, 10));
+    Assert.assertEquals(1, index.getSize());
+    Assert.assertEquals(1, index.getTermCount());
+  }
+
+  @Test
+  public void clearRemovesEverything(){
+    index.add(comment(1, "word"), null);
+
+    index.clear(null);
+
+    Assert.assertEquals(0, index.getSize());
+    Assert.assertEquals(0, index.getTermCount());
+  }
+
+  @Test
+  public void firstBuildReadsStoredCommentsRightAway(){
+    store(comment(1, "stored"));
+
+    index.build();
+
+    Assert.assertTrue(rebuilds.isEmpty());
+    assertIds(index.search("stored", null, 10), 1);
+  }
+
+  @Test
+  public void outOfDateIndexKeepsServingWhileRebuilt(){
+    store(comment(1, "old"));
+    index.build();
+
+    // Another instance stores a comment.
+    store(comment(2, "new"));
+    CommentGeneration.increment();
+    index.build();
+
+    Assert.assertEquals(1, rebuilds.size());
+    assertIds(index.search("new", null, 10));
+    assertIds(index.search("old", null, 10), 1);
+
+    rebuilds.remove(0).run();
+    assertIds(index.search("new", null, 10), 2);
+  }
+
+  @Test
+  public void ownChangesDontRebuild(){
+    index.build();
+
+    Entity commentEntity = comment(1, "mine");
+    store(commentEntity);
+    index.add(commentEntity, CommentGeneration.increment());
+    index.advanceSharedGeneration(CommentGeneration.increment());
+    index.build();
+
+    Assert.assertTrue(rebuilds.isEmpty());
+    assertIds(index.search("mine", null, 10), 1);
+  }
+
+  @Test
+  public void schedulesOneRebuildAtATime(){
+    index.build();
+    CommentGeneration.increment();
+
+    index.build();
+    index.build();
+
+    Assert.assertEquals(1, rebuilds.size());
+  }
+
+  @Test
+  public void rebuildKeepsDeletionsOfItsOwnInstance(){
+    Entity commentEntity = comment(1, "gone");
+    store(commentEntity);
+    index.build();
+    CommentGeneration.increment();
+    index.build();
+
+    // Deleted after the rebuild was scheduled but before it read the datastore.
+    DatastoreServiceFactory.getDatastoreService().delete(commentEntity.getKey());
+    index.remove(1, CommentGeneration.increment());
+    rebuilds.remove(0).run();
+
+    assertIds(index.search("gone", null, 10));
+  }
+
+  private static Entity comment(long id, String content){
+    Entity commentEntity = new Entity("Comment", id);
+    commentEntity.setProperty("timestamp", id);
+    commentEntity.setProperty("content", content);
+    return commentEntity;
+  }
+
+  private static void store(Entity commentEntity){
+    DatastoreServiceFactory.getDatastoreService().put(commentEntity);
+  }
+
+  private static void assertIds(CommentIndex.SearchPage page, long... ids){
+    long[] actual = new long[page.getComments().size()];
+    for(int i = 0; i < actual.length; i++){
+      actual[i] = page.getComments().get(i).getKey().getId();
+    }
+    Assert.assertEquals(Arrays.toString(ids), Arrays.toString(actual));
+  }
+}
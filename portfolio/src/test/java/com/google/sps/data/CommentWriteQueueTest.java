@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CommentWriteQueueTest{
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig());
+
+  private CommentWriteQueue writeQueue;
+
+  @Before
+  public void setUp(){
+    helper.setUp();
+    writeQueue = new CommentWriteQueue(10, 10, 10);
+  }
+
+  @After
+  public void tearDown(){
+    CommentCache.getInstance().invalidate();
+    helper.tearDown();
+  }
+
+  @Test
+  public void storesQueuedCommentsInOneBatch() throws Exception {
+    Entity first = queue(100);
+    Entity second = queue(200);
+
+    List<Entity> batch = new ArrayList<>();
+    writeQueue.fillBatch(batch);
+    writeQueue.flush(batch);
+
+    Assert.assertTrue(batch.isEmpty());
+    Assert.assertEquals(0, writeQueue.getSize());
+    Assert.assertTrue(isStored(first));
+    Assert.assertTrue(isStored(second));
+  }
+
+  @Test
+  public void listsPendingCommentsNewestFirst() throws Exception {
+    Entity older = queue(100);
+    Entity newer = queue(200);
+
+    Assert.assertEquals(Arrays.asList(newer, older), writeQueue.getPending());
+  }
+
+  @Test
+  public void commentCancelledBeforeFlushIsNeverStored() throws Exception {
+    Entity cancelled = queue(100);
+    Entity kept = queue(200);
+
+    writeQueue.cancel(cancelled.getKey().getId());
+    List<Entity> batch = new ArrayList<>();
+    writeQueue.fillBatch(batch);
+
+    Assert.assertEquals(Arrays.asList(kept), batch);
+    Assert.assertEquals(Arrays.asList(kept), writeQueue.getPending());
+    writeQueue.flush(batch);
+    Assert.assertFalse(isStored(cancelled));
+    Assert.assertTrue(isStored(kept));
+  }
+
+  @Test
+  public void commentCancelledDuringFlushIsDeletedAgain() throws Exception {
+    Entity cancelled = queue(100);
+    List<Entity> batch = new ArrayList<>();
+    writeQueue.fillBatch(batch);
+
+    writeQueue.cancel(cancelled.getKey().getId());
+    writeQueue.flush(batch);
+
+    Assert.assertFalse(isStored(cancelled));
+  }
+
+  @Test
+  public void cancelAllEmptiesTheQueue() throws Exception {
+    queue(100);
+    queue(200);
+
+    writeQueue.cancelAll();
+    List<Entity> batch = new ArrayList<>();
+    writeQueue.fillBatch(batch);
+
+    Assert.assertTrue(batch.isEmpty());
+    Assert.assertEquals(0, writeQueue.getSize());
+  }
+
+  @Test
+  public void refusesCommentsWhenFull() throws Exception {
+    CommentWriteQueue smallQueue = new CommentWriteQueue(1, 10, 10);
+    Assert.assertTrue(smallQueue.offer(comment(smallQueue, 100), 0));
+
+    Assert.assertFalse(smallQueue.offer(comment(smallQueue, 200), 0));
+    Assert.assertEquals(1, smallQueue.getSize());
+  }
+
+  @Test
+  public void flushKeepsThisInstancesCacheUpToDate() throws Exception {
+    CommentCache cache = CommentCache.getInstance();
+    Entity queued = queue(100);
+    cache.load(new ArrayList<>(), true, cache.getGeneration(), CommentGeneration.get());
+    cache.add(queued, null);
+
+    List<Entity> batch = new ArrayList<>();
+    writeQueue.fillBatch(batch);
+    Long sharedGeneration = writeQueue.flush(batch);
+
+    Assert.assertEquals(CommentGeneration.get(), sharedGeneration);
+    Assert.assertNotNull(cache.getPage(1));
+  }
+
+  private Entity queue(long timestamp) throws InterruptedException {
+    Entity commentEntity = comment(writeQueue, timestamp);
+    Assert.assertTrue(writeQueue.offer(commentEntity, 0));
+    return commentEntity;
+  }
+
+  private static Entity comment(CommentWriteQueue writeQueue, long timestamp){
+    Entity commentEntity = new Entity(writeQueue.allocateKey());
+    commentEntity.setProperty("timestamp", timestamp);
+    commentEntity.setProperty("content", "comment " + timestamp);
+    return commentEntity;
+  }
+
+  private static boolean isStored(Entity commentEntity){
+    DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+    try{
+      dataStore.get(commentEntity.getKey());
+      return true;
+    }catch(EntityNotFoundException e){
+      return false;
+    }
+  }
+}
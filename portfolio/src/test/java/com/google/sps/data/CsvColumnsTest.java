@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CsvColumnsTest{
+  // Numbers the fast path converts with a single multiplication or division.
+  private static final String[] EXACT_NUMBERS = {
+    "0", "-0", "7", "+7", "0.1", "1.888305", "-0.05999594", "0.020000", "123456789012345",
+    "1e22", "2.5E+3", "-3.5e-3", "9007199254740991", ".5", "5."
+  };
+
+  // Numbers with too many digits or too large an exponent for the fast path.
+  private static final String[] FALLBACK_NUMBERS = {
+    "1.8744914495479452", "3.14159265358979323846", "0.30000000000000004441", "1e-300",
+    "1e308", "4.9e-324", "123456789012345678901234567890", "1e23", "NaN", "-Infinity"
+  };
+
+  @Test
+  public void parsesLikeDoubleParseDouble(){
+    for(String number : EXACT_NUMBERS){
+      assertParsesLikeJava(number);
+    }
+    for(String number : FALLBACK_NUMBERS){
+      assertParsesLikeJava(number);
+    }
+  }
+
+  @Test
+  public void trimsSpacesAroundCells(){
+    Assert.assertEquals(1.5, parseCell(" \t1.5 \r"), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedNumbers(){
+    parseCell("1.2.3");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMissingExponentDigits(){
+    parseCell("1e");
+  }
+
+  @Test
+  public void skipsHeaderRow(){
+    double[][] columns = parse("time,value\n1,2\n3,4\n", 2);
+
+    Assert.assertArrayEquals(new double[] {1, 3}, columns[0], 0);
+    Assert.assertArrayEquals(new double[] {2, 4}, columns[1], 0);
+  }
+
+  @Test
+  public void keepsNumericFirstRow(){
+    double[][] columns = parse("-1,2\n3,4", 2);
+
+    Assert.assertArrayEquals(new double[] {-1, 3}, columns[0], 0);
+  }
+
+  @Test
+  public void handlesCrlfAndBlankLines(){
+    double[][] columns = parse("0.5,1.25\r\n\r\n0.75,-2\r\n  \r\n", 2);
+
+    Assert.assertArrayEquals(new double[] {0.5, 0.75}, columns[0], 0);
+    Assert.assertArrayEquals(new double[] {1.25, -2}, columns[1], 0);
+  }
+
+  @Test
+  public void ignoresExtraColumns(){
+    double[][] columns = parse("1,2,3\n4,5,6\n", 2);
+
+    Assert.assertEquals(2, columns.length);
+    Assert.assertArrayEquals(new double[] {2, 5}, columns[1], 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMissingCells(){
+    parse("1,2\n3\n", 2);
+  }
+
+  @Test
+  public void readsStreams() throws IOException {
+    byte[] csv = "time,value\n1,2\n3,4\n".getBytes(StandardCharsets.US_ASCII);
+    double[][] columns = CsvColumns.read(new ByteArrayInputStream(csv), 2);
+
+    Assert.assertArrayEquals(new double[] {2, 4}, columns[1], 0);
+  }
+
+  @Test
+  public void parallelChunksKeepEveryRow(){
+    // Large enough to be split across cores, with every row different so a row that is
+    // lost, repeated or cut at a chunk boundary shows up.
+    Random random = new Random(13);
+    int rowCount = 400000;
+    double[] expectedTimes = new double[rowCount];
+    double[] expectedValues = new double[rowCount];
+    StringBuilder csv = new StringBuilder("time,value\n");
+    for(int i = 0; i < rowCount; i++){
+      expectedTimes[i] = i * 0.002;
+      expectedValues[i] = random.nextGaussian();
+      csv.append(expectedTimes[i]).append(',').append(expectedValues[i]).append(i % 2 == 0 ? "\n" : "\r\n");
+    }
+    Assert.assertTrue(csv.length() > 4 * 1024 * 1024);
+
+    double[][] columns = parse(csv.toString(), 2);
+
+    Assert.assertArrayEquals(expectedTimes, columns[0], 0);
+    Assert.assertArrayEquals(expectedValues, columns[1], 0);
+  }
+
+  private static void assertParsesLikeJava(String number){
+    double expected = Double.parseDouble(number);
+    Assert.assertEquals(number, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(parseCell(number)));
+  }
+
+  private static double parseCell(String cell){
+    ByteBuffer buffer = ByteBuffer.wrap(cell.getBytes(StandardCharsets.US_ASCII));
+    return CsvColumns.parseDouble(buffer, 0, buffer.limit());
+  }
+
+  private static double[][] parse(String csv, int columnCount){
+    return CsvColumns.parse(ByteBuffer.wrap(csv.getBytes(StandardCharsets.US_ASCII)), columnCount);
+  }
+}
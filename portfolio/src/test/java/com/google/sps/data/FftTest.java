@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class FftTest{
+  @Test
+  public void sineLandsInItsBin(){
+    int size = 64;
+    int cycles = 5;
+    double amplitude = 3;
+    double[] real = new double[size];
+    double[] imaginary = new double[size];
+    for(int n = 0; n < size; n++){
+      real[n] = amplitude * Math.sin(2 * Math.PI * cycles * n / size);
+    }
+
+    Fft.transform(real, imaginary);
+
+    // With the e^(-2 pi i k n / N) convention, A sin gives -i A N / 2 at k and +i A N / 2 at N - k.
+    for(int k = 0; k < size; k++){
+      double expectedImaginary = k == cycles ? -amplitude * size / 2
+          : k == size - cycles ? amplitude * size / 2 : 0;
+      Assert.assertEquals(0, real[k], 1e-9);
+      Assert.assertEquals(expectedImaginary, imaginary[k], 1e-9);
+    }
+  }
+
+  @Test
+  public void matchesDirectTransform(){
+    int size = 16;
+    double[] real = new double[size];
+    double[] imaginary = new double[size];
+    for(int n = 0; n < size; n++){
+      real[n] = Math.cos(0.7 * n) + 0.25 * n;
+      imaginary[n] = Math.sin(1.3 * n) - 0.5;
+    }
+    double[] expectedReal = new double[size];
+    double[] expectedImaginary = new double[size];
+    for(int k = 0; k < size; k++){
+      for(int n = 0; n < size; n++){
+        double angle = -2 * Math.PI * k * n / size;
+        expectedReal[k] += real[n] * Math.cos(angle) - imaginary[n] * Math.sin(angle);
+        expectedImaginary[k] += real[n] * Math.sin(angle) + imaginary[n] * Math.cos(angle);
+      }
+    }
+
+    Fft.transform(real, imaginary);
+
+    Assert.assertArrayEquals(expectedReal, real, 1e-9);
+    Assert.assertArrayEquals(expectedImaginary, imaginary, 1e-9);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsLengthThatIsNotPowerOfTwo(){
+    Fft.transform(new double[12], new double[12]);
+  }
+}
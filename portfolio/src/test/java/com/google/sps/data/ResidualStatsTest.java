@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ResidualStatsTest{
+  @Test
+  public void matchesTwoPassMeanAndVariance(){
+    // A large offset makes the naive sum of squares lose most of its precision.
+    Random random = new Random(7);
+    double[] residuals = new double[10000];
+    for(int i = 0; i < residuals.length; i++){
+      residuals[i] = 1e6 + random.nextGaussian() * 0.01;
+    }
+    ResidualStats stats = statsOf(residuals);
+
+    double mean = 0;
+    for(double residual : residuals){
+      mean += residual;
+    }
+    mean /= residuals.length;
+    double variance = 0;
+    for(double residual : residuals){
+      variance += (residual - mean) * (residual - mean);
+    }
+    variance /= residuals.length;
+
+    Assert.assertEquals(residuals.length, stats.getCount());
+    Assert.assertEquals(mean, stats.getMean(), 1e-8);
+    Assert.assertEquals(variance, stats.getVariance(), variance * 1e-6);
+  }
+
+  @Test
+  public void gathersErrorStatistics(){
+    ResidualStats stats = statsOf(new double[] {3, -4, 0, 1});
+
+    Assert.assertEquals(0, stats.getMean(), 1e-12);
+    Assert.assertEquals(6.5, stats.getVariance(), 1e-12);
+    Assert.assertEquals(Math.sqrt(6.5), stats.getRmse(), 1e-12);
+    Assert.assertEquals(4, stats.getMaxError(), 0);
+    Assert.assertEquals(26, stats.getChiSquared(1), 1e-12);
+    Assert.assertEquals(6.5, stats.getChiSquared(2), 1e-12);
+  }
+
+  @Test
+  public void emptyStatsAreZero(){
+    ResidualStats stats = new ResidualStats();
+
+    Assert.assertEquals(0, stats.getCount());
+    Assert.assertEquals(0, stats.getVariance(), 0);
+    Assert.assertEquals(0, stats.getRmse(), 0);
+  }
+
+  @Test
+  public void encodesJsonForSigma(){
+    ResidualStats stats = statsOf(new double[] {3, -4, 0, 1});
+
+    JsonObject json = new JsonParser().parse(
+        new String(stats.encodeJson(2), StandardCharsets.UTF_8)).getAsJsonObject();
+
+    Assert.assertEquals(4, json.get("count").getAsLong());
+    Assert.assertEquals(Math.sqrt(6.5), json.get("rmse").getAsDouble(), 1e-12);
+    Assert.assertEquals(4, json.get("maxError").getAsDouble(), 0);
+    Assert.assertEquals(0, json.get("mean").getAsDouble(), 1e-12);
+    Assert.assertEquals(6.5, json.get("variance").getAsDouble(), 1e-12);
+    Assert.assertEquals(2, json.get("sigma").getAsDouble(), 0);
+    Assert.assertEquals(6.5, json.get("chiSquared").getAsDouble(), 1e-12);
+  }
+
+  private static ResidualStats statsOf(double[] residuals){
+    ResidualStats stats = new ResidualStats();
+    for(double residual : residuals){
+      stats.add(residual);
+    }
+    return stats;
+  }
+}
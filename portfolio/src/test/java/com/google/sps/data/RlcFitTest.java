@@ -0,0 +1,105 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class RlcFitTest{
+  private static final double AMPLITUDE = 1.9;
+  private static final double DECAY_RATE = 1.5;
+  private static final double ANGULAR_FREQUENCY = 20;
+  private static final double PHASE = 0.3;
+  private static final double OFFSET = 0.1;
+
+  private static final int SIZE = 1000;
+
+  @Test
+  public void convergesFromPerturbedStart(){
+    double[] times = createTimes(0.5);
+    double[] values = createResponse(times, 0);
+
+    RlcFit fit = RlcFit.refine(times, values, SIZE, new double[] {
+        AMPLITUDE * 1.2, DECAY_RATE * 0.7, ANGULAR_FREQUENCY * 1.03, PHASE + 0.2, OFFSET - 0.05});
+
+    assertParameters(fit, 1e-6);
+    Assert.assertEquals(0, fit.getRmse(), 1e-8);
+    Assert.assertTrue(fit.getIterations() < 200);
+  }
+
+  @Test
+  public void refineHandlesSeriesNotStartingAtZero(){
+    double[] times = createTimes(0.5);
+    for(int i = 0; i < SIZE; i++){
+      times[i] += 0.25;
+    }
+    double[] values = createResponse(times, 0);
+
+    // The start is relative to the first sample, so its amplitude and phase are shifted.
+    RlcFit fit = RlcFit.refine(times, values, SIZE, new double[] {
+        AMPLITUDE * Math.exp(-DECAY_RATE * 0.25) * 1.1, DECAY_RATE * 1.2, ANGULAR_FREQUENCY * 0.98,
+        PHASE + ANGULAR_FREQUENCY * 0.25 - 0.1, OFFSET + 0.05});
+
+    assertParameters(fit, 1e-6);
+  }
+
+  @Test
+  public void fitFindsItsOwnStartOnNoisyData(){
+    double[] times = createTimes(2);
+    double[] values = createResponse(times, 0.01);
+
+    RlcFit fit = RlcFit.fit(times, values, SIZE);
+
+    assertParameters(fit, 0.02);
+    Assert.assertEquals(0.01 / Math.sqrt(2), fit.getRmse(), 0.001);
+    for(int i = 0; i < SIZE; i += 97){
+      Assert.assertEquals(values[i], fit.evaluate(times[i]), 0.05);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void needsFiveSamples(){
+    RlcFit.fit(new double[] {0, 1, 2, 3}, new double[] {1, 0, -1, 0}, 4);
+  }
+
+  private static double[] createTimes(double span){
+    double[] times = new double[SIZE];
+    for(int i = 0; i < SIZE; i++){
+      times[i] = i * span / SIZE;
+    }
+    return times;
+  }
+
+  // The model response plus a deterministic ripple of the given amplitude standing in for noise.
+  private static double[] createResponse(double[] times, double noise){
+    double[] values = new double[SIZE];
+    for(int i = 0; i < SIZE; i++){
+      values[i] = AMPLITUDE * Math.exp(-DECAY_RATE * times[i]) * Math.cos(ANGULAR_FREQUENCY * times[i] + PHASE)
+          + OFFSET + noise * Math.sin(7919.0 * i);
+    }
+    return values;
+  }
+
+  private static void assertParameters(RlcFit fit, double tolerance){
+    Assert.assertEquals(AMPLITUDE, fit.getAmplitude(), tolerance * AMPLITUDE);
+    Assert.assertEquals(DECAY_RATE, fit.getDecayRate(), tolerance * DECAY_RATE);
+    Assert.assertEquals(ANGULAR_FREQUENCY, fit.getAngularFrequency(), tolerance * ANGULAR_FREQUENCY);
+    Assert.assertEquals(PHASE, fit.getPhase(), tolerance * 10);
+    Assert.assertEquals(OFFSET, fit.getOffset(), tolerance);
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class RlcSimulatorTest{
+  // An underdamped circuit ringing at about 500 Hz.
+  private static final double RESISTANCE = 10;
+  private static final double INDUCTANCE = 0.01;
+  private static final double CAPACITANCE = 1e-5;
+  private static final double V0 = 1.5;
+
+  @Test
+  public void matchesAnalyticUnderdampedResponse(){
+    double dt = 1e-6;
+    double[] voltages = RlcSimulator.simulate(RESISTANCE, INDUCTANCE, CAPACITANCE, V0, dt, 5000);
+
+    Assert.assertEquals(5001, voltages.length);
+    for(int step = 0; step < voltages.length; step++){
+      Assert.assertEquals(analyticVoltage(step * dt), voltages[step], 1e-9);
+    }
+  }
+
+  @Test
+  public void errorShrinksWithTheFourthPowerOfTheStep(){
+    double coarseError = maxError(2e-5, 250);
+    double fineError = maxError(1e-5, 500);
+
+    double ratio = coarseError / fineError;
+    Assert.assertTrue("error ratio " + ratio, ratio > 12 && ratio < 20);
+  }
+
+  @Test
+  public void noStepsReturnsTheInitialVoltage(){
+    Assert.assertArrayEquals(new double[] {V0},
+        RlcSimulator.simulate(RESISTANCE, INDUCTANCE, CAPACITANCE, V0, 1e-6, 0), 0);
+  }
+
+  @Test
+  public void rejectsNonPhysicalParameters(){
+    double[][] parameters = {{-1, INDUCTANCE, CAPACITANCE, 1e-6}, {RESISTANCE, 0, CAPACITANCE, 1e-6},
+        {RESISTANCE, INDUCTANCE, 0, 1e-6}, {RESISTANCE, INDUCTANCE, CAPACITANCE, 0},
+        {Double.NaN, INDUCTANCE, CAPACITANCE, 1e-6}};
+    for(double[] candidate : parameters){
+      try{
+        RlcSimulator.simulate(candidate[0], candidate[1], candidate[2], V0, candidate[3], 10);
+        Assert.fail("accepted " + Arrays.toString(candidate));
+      }catch(IllegalArgumentException expected){
+      }
+    }
+  }
+
+  // Largest difference from the analytic response over steps of size dt.
+  private static double maxError(double dt, int steps){
+    double[] voltages = RlcSimulator.simulate(RESISTANCE, INDUCTANCE, CAPACITANCE, V0, dt, steps);
+    double error = 0;
+    for(int step = 0; step <= steps; step++){
+      error = Math.max(error, Math.abs(voltages[step] - analyticVoltage(step * dt)));
+    }
+    return error;
+  }
+
+  // v(t) = v0 e^(-at) (cos(wt) + a / w sin(wt)), which starts at v0 with no current.
+  private static double analyticVoltage(double t){
+    double decayRate = RESISTANCE / (2 * INDUCTANCE);
+    double angularFrequency = Math.sqrt(1 / (INDUCTANCE * CAPACITANCE) - decayRate * decayRate);
+    return V0 * Math.exp(-decayRate * t)
+        * (Math.cos(angularFrequency * t) + decayRate / angularFrequency * Math.sin(angularFrequency * t));
+  }
+}
@@ -0,0 +1,187 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SingleFlightTest{
+  private static final int WAITERS = 8;
+
+  private final ExecutorService threads = Executors.newCachedThreadPool();
+  private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown(){
+    release.countDown();
+    threads.shutdownNow();
+  }
+
+  @Test
+  public void concurrentCallsShareOneLoad() throws Exception {
+    Future<String> leader = threads.submit(() -> singleFlight.run("key", () -> {
+      awaitRelease();
+      return "loaded";
+    }));
+    List<Future<String>> waiters = startWaiters("key");
+
+    release.countDown();
+
+    Assert.assertEquals("loaded", leader.get(5, TimeUnit.SECONDS));
+    for(Future<String> waiter : waiters){
+      Assert.assertEquals("loaded", waiter.get(5, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(1, singleFlight.getExecutions());
+    Assert.assertEquals(WAITERS, singleFlight.getCollapsed());
+    Assert.assertEquals(0, singleFlight.getInFlight());
+  }
+
+  @Test
+  public void failureReachesEveryWaiter() throws Exception {
+    IOException failure = new IOException("datastore unavailable");
+    Future<String> leader = threads.submit(() -> singleFlight.run("key", () -> {
+      awaitRelease();
+      throw failure;
+    }));
+    List<Future<String>> waiters = startWaiters("key");
+
+    release.countDown();
+
+    Assert.assertSame(failure, getFailure(leader));
+    for(Future<String> waiter : waiters){
+      Assert.assertSame(failure, getFailure(waiter));
+    }
+    Assert.assertEquals(1, singleFlight.getExecutions());
+    Assert.assertEquals(0, singleFlight.getInFlight());
+  }
+
+  @Test
+  public void runtimeFailureReachesEveryWaiter() throws Exception {
+    IllegalStateException failure = new IllegalStateException("bad page");
+    Future<String> leader = threads.submit(() -> singleFlight.run("key", () -> {
+      awaitRelease();
+      throw failure;
+    }));
+    List<Future<String>> waiters = startWaiters("key");
+
+    release.countDown();
+
+    Assert.assertSame(failure, getFailure(leader));
+    for(Future<String> waiter : waiters){
+      Assert.assertSame(failure, getFailure(waiter));
+    }
+  }
+
+  @Test
+  public void differentKeysLoadSeparately() throws Exception {
+    Future<String> first = threads.submit(() -> singleFlight.run("first", () -> {
+      awaitRelease();
+      return "first";
+    }));
+    awaitInFlight(1);
+
+    // Another key doesn't wait for the first one's load.
+    Assert.assertEquals("second", singleFlight.run("second", () -> "second"));
+
+    release.countDown();
+    Assert.assertEquals("first", first.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(2, singleFlight.getExecutions());
+    Assert.assertEquals(0, singleFlight.getCollapsed());
+  }
+
+  @Test
+  public void resultsAreNotKeptAfterLoad() throws Exception {
+    Assert.assertEquals("one", singleFlight.run("key", () -> "one"));
+    Assert.assertEquals("two", singleFlight.run("key", () -> "two"));
+
+    Assert.assertEquals(2, singleFlight.getExecutions());
+    Assert.assertEquals(0, singleFlight.getInFlight());
+  }
+
+  @Test
+  public void failedLoadIsNotKept() throws Exception {
+    try{
+      singleFlight.run("key", () -> {
+        throw new IOException("first attempt");
+      });
+      Assert.fail();
+    }catch(IOException expected){
+      // The next call loads again.
+    }
+
+    Assert.assertEquals("retried", singleFlight.run("key", () -> "retried"));
+    Assert.assertEquals(0, singleFlight.getInFlight());
+  }
+
+  // Starts callers that join the load running for the key and waits until all of them have.
+  private List<Future<String>> startWaiters(String key) throws InterruptedException {
+    awaitInFlight(1);
+    List<Future<String>> waiters = new ArrayList<>();
+    for(int i = 0; i < WAITERS; i++){
+      waiters.add(threads.submit(() -> singleFlight.run(key, () -> {
+        throw new AssertionError("waiter ran its own loader");
+      })));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while(singleFlight.getCollapsed() < WAITERS){
+      Assert.assertTrue("waiters didn't join the load", System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+    return waiters;
+  }
+
+  private void awaitInFlight(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while(singleFlight.getInFlight() < count){
+      Assert.assertTrue("load didn't start", System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  private void awaitRelease() throws IOException {
+    try{
+      if(!release.await(5, TimeUnit.SECONDS)){
+        throw new IOException("test timed out");
+      }
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  private static Throwable getFailure(Future<String> call) throws Exception {
+    try{
+      call.get(5, TimeUnit.SECONDS);
+    }catch(ExecutionException e){
+      return e.getCause();
+    }
+    throw new AssertionError("call didn't fail");
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ChartDataTest{
+  @Test
+  public void acceptsListedValues(){
+    Assert.assertTrue(ChartData.accepts(request("deflate, GZIP"), "Accept-Encoding", "gzip"));
+    Assert.assertTrue(ChartData.accepts(request("gzip;q=0.5"), "Accept-Encoding", "gzip"));
+    Assert.assertTrue(ChartData.accepts(request("br", "gzip"), "Accept-Encoding", "gzip"));
+    Assert.assertFalse(ChartData.accepts(request("deflate"), "Accept-Encoding", "gzip"));
+    Assert.assertFalse(ChartData.accepts(request(), "Accept-Encoding", "gzip"));
+  }
+
+  @Test
+  public void refusesValuesWithZeroQuality(){
+    for(String header : new String[] {"gzip;q=0", "gzip;q=0.0", "gzip; q=0.000", "gzip;level=1;q=0",
+        "gzip; Q = 0", "gzip;q=-1", "gzip;q=none"}){
+      Assert.assertFalse(header, ChartData.accepts(request(header), "Accept-Encoding", "gzip"));
+    }
+  }
+
+  @Test
+  public void refusesBinaryWithZeroQuality(){
+    Assert.assertFalse(ChartData.accepts(request("application/octet-stream;q=0.0, application/json"),
+        "Accept", "application/octet-stream"));
+    Assert.assertTrue(ChartData.accepts(request("application/json;q=0.9, application/octet-stream"),
+        "Accept", "application/octet-stream"));
+  }
+
+  // A request whose headers all have the given values.
+  private static HttpServletRequest request(String... headerValues){
+    return (HttpServletRequest)Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+          if(method.getName().equals("getHeaders")){
+            return Collections.enumeration(Arrays.asList(headerValues));
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Meeting query engine that keeps each attendee's busy time for the day as a bitset with one bit
+ * per minute. The busy times of a group are OR-ed together a word at a time and free blocks are
+ * found by scanning for set and clear bits, so a query costs the same however many events the
+ * attendees have. Gives the same answers as {@link FindMeetingQuery}, and is used by the query
+ * servlet when the request asks for the bitset engine. Queries only read the bitsets, so one
+ * instance can serve concurrent requests.
+ */
+public final class BitsetMeetingQuery {
+  private static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+  private static final int WORDS_PER_DAY = (MINUTES_PER_DAY + Long.SIZE - 1) / Long.SIZE;
+
+  private static final long[] NEVER_BUSY = new long[WORDS_PER_DAY];
+
+  private final Map<String, long[]> busyMinutes = new HashMap<>();
+
+  /**
+   * Creates an engine for the given events of a single day.
+   */
+  public BitsetMeetingQuery(Collection<Event> events) {
+    for (Event event : events) {
+      for (String attendee : event.getAttendees()) {
+        long[] minutes = busyMinutes.computeIfAbsent(attendee, key -> new long[WORDS_PER_DAY]);
+        setRange(minutes, event.getWhen().start(), event.getWhen().end());
+      }
+    }
+  }
+
+  /**
+   * Returns all time blocks that can accomodate the requested meeting without conflicts for the
+   * mandatory attendees and, if possible, for as many optional attendees as possible.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) {
+    int duration = (int) request.getDuration();
+    if (duration > TimeRange.END_OF_DAY) {
+      return new ArrayList<TimeRange>();
+    }
+
+    long[] mandatoryBusy = new long[WORDS_PER_DAY];
+    for (String attendee : request.getAttendees()) {
+      or(mandatoryBusy, busyMinutes.get(attendee));
+    }
+    List<TimeRange> availableTimes = new ArrayList<>();
+    addFreeBlocks(mandatoryBusy, duration, availableTimes);
+
+    Collection<String> optionalAttendees = request.getOptionalAttendees();
+    if (optionalAttendees.isEmpty()) {
+      return availableTimes;
+    }
+
+    // Finding the blocks within mandatory free time that the most optional attendees can make.
+    List<List<TimeRange>> optionalAvailableTimes = new ArrayList<>();
+    for (String optionalAttendee : optionalAttendees) {
+      List<TimeRange> attendeeAvailableTimes = new ArrayList<>();
+      addFreeBlocks(busyMinutes.getOrDefault(optionalAttendee, NEVER_BUSY), duration,
+          attendeeAvailableTimes);
+      optionalAvailableTimes.add(attendeeAvailableTimes);
+    }
+    List<TimeRange> mostAttendedTimes = OptionalAttendeeSweep.findMostAttendedTimes(
+        availableTimes, optionalAvailableTimes, duration);
+
+    if (request.getAttendees().isEmpty() || !mostAttendedTimes.isEmpty()) {
+      return mostAttendedTimes;
+    }
+    return availableTimes;
+  }
+
+  /**
+   * Adds every block of at least duration minutes in which no bit is set, in order.
+   */
+  private static void addFreeBlocks(long[] busy, int duration, List<TimeRange> freeBlocks) {
+    int minute = nextClear(busy, 0);
+    while (minute < MINUTES_PER_DAY) {
+      int busyStart = nextSet(busy, minute);
+      if (busyStart - minute >= duration) {
+        freeBlocks.add(TimeRange.fromStartEnd(minute, busyStart, false));
+      }
+      minute = nextClear(busy, busyStart);
+    }
+  }
+
+  /**
+   * Returns the first minute from {@code from} on whose bit is set, or the end of the day.
+   */
+  private static int nextSet(long[] bits, int from) {
+    if (from >= MINUTES_PER_DAY) {
+      return MINUTES_PER_DAY;
+    }
+    int word = from / Long.SIZE;
+    long remaining = bits[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == WORDS_PER_DAY) {
+        return MINUTES_PER_DAY;
+      }
+      remaining = bits[word];
+    }
+    return Math.min(word * Long.SIZE + Long.numberOfTrailingZeros(remaining), MINUTES_PER_DAY);
+  }
+
+  /**
+   * Returns the first minute from {@code from} on whose bit is clear, or the end of the day.
+   */
+  private static int nextClear(long[] bits, int from) {
+    if (from >= MINUTES_PER_DAY) {
+      return MINUTES_PER_DAY;
+    }
+    int word = from / Long.SIZE;
+    long remaining = ~bits[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == WORDS_PER_DAY) {
+        return MINUTES_PER_DAY;
+      }
+      remaining = ~bits[word];
+    }
+    return Math.min(word * Long.SIZE + Long.numberOfTrailingZeros(remaining), MINUTES_PER_DAY);
+  }
+
+  /**
+   * Sets the bits of the minutes from start up to but not including end.
+   */
+  private static void setRange(long[] bits, int start, int end) {
+    start = Math.max(start, 0);
+    end = Math.min(end, MINUTES_PER_DAY);
+    if (start >= end) {
+      return;
+    }
+    int firstWord = start / Long.SIZE;
+    int lastWord = (end - 1) / Long.SIZE;
+    long firstMask = -1L << start;
+    long lastMask = -1L >>> (Long.SIZE - end % Long.SIZE) % Long.SIZE;
+    if (firstWord == lastWord) {
+      bits[firstWord] |= firstMask & lastMask;
+      return;
+    }
+    bits[firstWord] |= firstMask;
+    for (int word = firstWord + 1; word < lastWord; word++) {
+      bits[word] = -1L;
+    }
+    bits[lastWord] |= lastMask;
+  }
+
+  /**
+   * ORs other into bits, treating a missing bitset as all clear.
+   */
+  private static void or(long[] bits, long[] other) {
+    if (other == null) {
+      return;
+    }
+    for (int word = 0; word < WORDS_PER_DAY; word++) {
+      bits[word] |= other[word];
+    }
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Index from each attendee to the times of the events they attend, sorted by start time. Finding
+ * when a group of people is busy only looks at the events of the people in the group, so an index
+ * built once over a large calendar can answer many meeting queries quickly. Indexes are read-only.
+ */
+public final class EventIndex {
+  /**
+   * Orders ranges by start time, then by end time.
+   */
+  private static final Comparator<TimeRange> ORDER_BY_START_THEN_END =
+      TimeRange.ORDER_BY_START.thenComparing(TimeRange.ORDER_BY_END);
+
+  private final Map<String, TimeRange[]> busyTimes = new HashMap<>();
+
+  /**
+   * Creates an index of the given events.
+   */
+  public EventIndex(Collection<Event> events) {
+    Map<String, List<TimeRange>> eventTimes = new HashMap<>();
+    for (Event event : events) {
+      for (String attendee : event.getAttendees()) {
+        eventTimes.computeIfAbsent(attendee, key -> new ArrayList<>()).add(event.getWhen());
+      }
+    }
+    for (Map.Entry<String, List<TimeRange>> entry : eventTimes.entrySet()) {
+      TimeRange[] times = entry.getValue().toArray(new TimeRange[0]);
+      Arrays.sort(times, ORDER_BY_START_THEN_END);
+      busyTimes.put(entry.getKey(), times);
+    }
+  }
+
+  /**
+   * Returns the times of the events an attendee goes to, sorted by start time.
+   */
+  public List<TimeRange> getEventTimes(String attendee) {
+    TimeRange[] times = busyTimes.get(attendee);
+    return times == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(times));
+  }
+
+  /**
+   * Returns the times when at least one of the attendees is at an event, as ranges that neither
+   * overlap nor touch, sorted by start time. The attendees' event lists are merged in a single pass.
+   */
+  public List<TimeRange> getBusyTimes(Collection<String> attendees) {
+    List<TimeRange[]> lists = new ArrayList<>();
+    for (String attendee : new LinkedHashSet<>(attendees)) {
+      TimeRange[] times = busyTimes.get(attendee);
+      if (times != null) {
+        lists.add(times);
+      }
+    }
+
+    // Each queue entry is the index of a list; positions holds how far each list has been read.
+    int[] positions = new int[lists.size()];
+    PriorityQueue<Integer> nextStarts = new PriorityQueue<>(Math.max(1, lists.size()),
+        (a, b) -> Integer.compare(lists.get(a)[positions[a]].start(), lists.get(b)[positions[b]].start()));
+    for (int i = 0; i < lists.size(); i++) {
+      nextStarts.add(i);
+    }
+
+    List<TimeRange> merged = new ArrayList<>();
+    int busyStart = 0;
+    int busyEnd = -1;
+    while (!nextStarts.isEmpty()) {
+      int list = nextStarts.poll();
+      TimeRange time = lists.get(list)[positions[list]++];
+      if (positions[list] < lists.get(list).length) {
+        nextStarts.add(list);
+      }
+      if (time.duration() <= 0) {
+        continue;
+      }
+      if (busyEnd >= 0 && time.start() <= busyEnd) {
+        busyEnd = Math.max(busyEnd, time.end());
+      } else {
+        if (busyEnd >= 0) {
+          merged.add(TimeRange.fromStartEnd(busyStart, busyEnd, false));
+        }
+        busyStart = time.start();
+        busyEnd = time.end();
+      }
+    }
+    if (busyEnd >= 0) {
+      merged.add(TimeRange.fromStartEnd(busyStart, busyEnd, false));
+    }
+    return merged;
+  }
+}
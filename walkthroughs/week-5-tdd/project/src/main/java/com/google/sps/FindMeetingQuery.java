@@ -21,6 +21,7 @@ import java.util.TreeSet;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 
 public final class FindMeetingQuery {
@@ -28,13 +29,20 @@ public final class FindMeetingQuery {
    * Given a list of events for a single day and a request for a meeting, return
    * all time blocks that can accomodate the requested meeting such that there
    * are no conflicts with any of the other events for the mandatory attendees and, 
-   * if possible, optional attendees can be included.
+   * if possible, as many optional attendees as possible can be included.
    */
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(new EventIndex(events), request);
+  }
+
+  /**
+   * Same as {@link #query(Collection, MeetingRequest)} for events that were already indexed, so
+   * the index can be built once and shared by many queries.
+   */
+  public Collection<TimeRange> query(EventIndex eventIndex, MeetingRequest request) {
     Collection<String> attendees = request.getAttendees();
     Collection<TimeRange> availableTimes = new TreeSet<>(TimeRange.ORDER_BY_START);
     Collection<String> optionalAttendees = request.getOptionalAttendees();
-    Collection<TimeRange> optionalAvailableTimes = new TreeSet<>(TimeRange.ORDER_BY_START); 
     
     int duration = (int) request.getDuration();  
     
@@ -43,91 +51,48 @@ public final class FindMeetingQuery {
       return new ArrayList<TimeRange>();
     }
     
-    // Filtering out events with no conflicting attendees.
-    TreeSet<TimeRange> mandatoryConflictEvents = getConflicts(events, attendees);
+    // Looking up only the events of the mandatory attendees.
+    List<TimeRange> mandatoryConflicts = eventIndex.getBusyTimes(attendees);
      
     // If no events conflict then the whole day is free. Otherwise find
     // available blocks of time.
-    if(mandatoryConflictEvents.isEmpty()){
+    if(mandatoryConflicts.isEmpty()){
       availableTimes.add(TimeRange.WHOLE_DAY);
     }else{
-      availableTimes = getAvailableTimes(mandatoryConflictEvents, duration);
+      availableTimes = getAvailableTimes(mandatoryConflicts, duration);
+    }
+    if(optionalAttendees.isEmpty()){
+      return new ArrayList<TimeRange>(availableTimes);
     }
     
-    // Getting free time intervals for optional attendees that fit mandatory attendee free time blocks. 
+    // Finding the blocks within mandatory attendee free time that the most optional attendees can make.
+    List<Collection<TimeRange>> optionalAvailableTimes = new ArrayList<>();
     for(String optionalAttendee : optionalAttendees) {
-      TreeSet<TimeRange> attendeeConflicts = getConflicts(events, Arrays.asList(optionalAttendee));
-      TreeSet<TimeRange> attendeeAvailableTimes = getAvailableTimes(attendeeConflicts, duration);
-      optionalAvailableTimes.addAll(getLargeEnoughOverlaps(attendeeAvailableTimes, availableTimes, duration));
+      List<TimeRange> attendeeConflicts = eventIndex.getBusyTimes(Arrays.asList(optionalAttendee));
+      optionalAvailableTimes.add(getAvailableTimes(attendeeConflicts, duration));
     }
+    List<TimeRange> mostAttendedTimes =
+        OptionalAttendeeSweep.findMostAttendedTimes(availableTimes, optionalAvailableTimes, duration);
    
-    if((!optionalAttendees.isEmpty() && attendees.isEmpty()) || !optionalAvailableTimes.isEmpty()){
-      return new ArrayList<TimeRange>(optionalAvailableTimes);
+    if(attendees.isEmpty() || !mostAttendedTimes.isEmpty()){
+      return mostAttendedTimes;
     }
     return new ArrayList<TimeRange>(availableTimes);
   }
 
-  // Given two collections of TimeRanges return TimeRanges for which these two collections overlap.
-  private static TreeSet<TimeRange> getLargeEnoughOverlaps(Collection<TimeRange> firstCollection, 
-                                                           Collection<TimeRange> secondCollection,
-                                                           int minimumDuration){
-    TreeSet<TimeRange> overlaps = new TreeSet<>(TimeRange.ORDER_BY_START);
-    for(TimeRange firstTimeBlock : firstCollection) {
-      for(TimeRange secondTimeBlock : secondCollection) {
-        if(firstTimeBlock.overlaps(secondTimeBlock)) {
-          TimeRange overlapTime = getOverlap(firstTimeBlock, secondTimeBlock, false);
-          if(overlapTime.duration() >= minimumDuration) {
-            overlaps.add(overlapTime);
-          }
-        }
-      }
-    }
-    return overlaps;
-  }
-  
-  // Given two overlapping TimeRanges return the TimeRange for which the two ranges overlap.
-  private static TimeRange getOverlap(TimeRange rangeOne, TimeRange rangeTwo, boolean inclusive){
-   assert rangeOne.overlaps(rangeTwo) : "The two ranges don't overlap"; 
-   int startOverlap = Math.max(rangeOne.start(), rangeTwo.start());
-   int endOverlap = Math.min(rangeOne.end(), rangeTwo.end());
-   if(endOverlap == TimeRange.END_OF_DAY){
-     inclusive = true;
-   }
-   return TimeRange.fromStartEnd(startOverlap, endOverlap, inclusive);
-  }
-  
-  // Gets all available timeblocks of size at least meetingDuration  throughout the day given a list of conflicts.
-  private static TreeSet<TimeRange> getAvailableTimes(TreeSet<TimeRange> conflicts, int meetingDuration){
+  // Gets all available timeblocks of size at least meetingDuration throughout the day given
+  // conflicts that don't overlap, sorted by start time.
+  private static TreeSet<TimeRange> getAvailableTimes(List<TimeRange> conflicts, int meetingDuration){
     TreeSet<TimeRange> availableTimes = new TreeSet<>(TimeRange.ORDER_BY_START);
-    int unavailableStart = conflicts.first().start();
-    int unavailableEnd = conflicts.first().end();
     int availableStart = TimeRange.START_OF_DAY;
-    
-    TimeRange previousConflict = null;
-
-    // Extend unavailable time block for overlapping time conflicts
-    // if necessary. Otherwise, add TimeRange available before new
-    // unavailable block if it is large enough to accomodate meeting.
-    for(TimeRange currentConflict : conflicts) {
-      if(previousConflict != null) {
-        if(currentConflict.overlaps(previousConflict)) {
-          if(currentConflict.end() > previousConflict.end()) {
-            unavailableEnd = currentConflict.end();
-          }
-        } else {
-          addIfLargeEnough(availableTimes, availableStart, unavailableStart, meetingDuration, false);
-          availableStart = unavailableEnd;
-          unavailableStart = currentConflict.start();
-          unavailableEnd = currentConflict.end();
-        }
-      }
 
-      previousConflict = currentConflict;
+    // Adding the time before each conflict if it is large enough to accomodate the meeting.
+    for(TimeRange conflict : conflicts) {
+      addIfLargeEnough(availableTimes, availableStart, conflict.start(), meetingDuration, false);
+      availableStart = conflict.end();
     }
     
-    // Add last two possible available time blocks if they are large enough. 
-    addIfLargeEnough(availableTimes, availableStart, unavailableStart, meetingDuration, false);
-    availableStart = unavailableEnd;
+    // Add last possible available time block if it is large enough. 
     addIfLargeEnough(availableTimes, availableStart, TimeRange.END_OF_DAY, meetingDuration, true);
     
     return availableTimes;
@@ -137,25 +102,10 @@ public final class FindMeetingQuery {
   private static void addIfLargeEnough(Collection<TimeRange> availableTimes, int start, int end, 
     int meetingDuration, boolean inclusive){
     TimeRange availableBlock = TimeRange.fromStartEnd(start, end, inclusive);
-    if(availableBlock.duration() >= meetingDuration) {
+    if(availableBlock.duration() > 0 && availableBlock.duration() >= meetingDuration) {
       availableTimes.add(availableBlock);
     }
   }
 
-  // Getting timeslots for which a group of attendees is unavailable.
-  private static TreeSet<TimeRange> getConflicts(Collection<Event> events, Collection<String> attendees){
-    TreeSet<TimeRange> conflictingTimes = new TreeSet<>(TimeRange.ORDER_BY_START);
-    for(Event currentEvent:events) {
-      Collection<String> eventAttendees = currentEvent.getAttendees();
-      for(String currentAttendee : attendees) {
-        if(eventAttendees.contains(currentAttendee)) {
-          conflictingTimes.add(currentEvent.getWhen());
-          break;
-        }
-      }
-    }
-    return conflictingTimes;
-  }
-
 }
 
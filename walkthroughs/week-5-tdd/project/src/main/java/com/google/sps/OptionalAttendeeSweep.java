@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the meeting times that the most optional attendees can make. Each block of free time of at
+ * least the meeting's duration is turned into the range of minutes a meeting could start at inside
+ * it. One sweep over the sorted boundaries of those ranges then counts, for every start time that
+ * suits the mandatory attendees, how many optional attendees are free for the whole meeting.
+ * Sorting dominates, so the sweep takes O(E log E) for E free blocks.
+ */
+final class OptionalAttendeeSweep {
+  /**
+   * Orders boundaries by time.
+   */
+  private static final Comparator<Boundary> ORDER_BY_TIME =
+      Comparator.comparingInt(boundary -> boundary.time);
+
+  private OptionalAttendeeSweep() {}
+
+  /**
+   * Returns the time blocks, sorted by start, in which a meeting of the given duration can start
+   * within one of the mandatory attendees' free blocks and have as many optional attendees as
+   * possible. Every meeting that fits in a returned block has that many optional attendees free,
+   * though not always the same ones. Returns an empty list if no optional attendee can come.
+   *
+   * @param mandatoryTimes disjoint free blocks of the mandatory attendees
+   * @param optionalTimes for each optional attendee, their disjoint free blocks
+   */
+  static List<TimeRange> findMostAttendedTimes(Collection<TimeRange> mandatoryTimes,
+      Collection<? extends Collection<TimeRange>> optionalTimes, int duration) {
+    // A zero minute meeting still has to start at a minute when people are free.
+    int length = Math.max(duration, 1);
+    List<Boundary> boundaries = new ArrayList<>();
+    addStartTimes(boundaries, mandatoryTimes, length, 0, 1);
+    for (Collection<TimeRange> attendeeTimes : optionalTimes) {
+      addStartTimes(boundaries, attendeeTimes, length, 1, 0);
+    }
+    boundaries.sort(ORDER_BY_TIME);
+
+    // Sweeping through the start times, keeping the runs with the highest count seen so far.
+    List<TimeRange> bestStartTimes = new ArrayList<>();
+    int bestCount = 0;
+    int optionalFree = 0;
+    int mandatoryFree = 0;
+    int i = 0;
+    while (i < boundaries.size()) {
+      int time = boundaries.get(i).time;
+      for (; i < boundaries.size() && boundaries.get(i).time == time; i++) {
+        optionalFree += boundaries.get(i).optionalDelta;
+        mandatoryFree += boundaries.get(i).mandatoryDelta;
+      }
+      if (mandatoryFree == 0 || optionalFree == 0 || optionalFree < bestCount
+          || i == boundaries.size()) {
+        continue;
+      }
+      if (optionalFree > bestCount) {
+        bestCount = optionalFree;
+        bestStartTimes.clear();
+      }
+      int nextTime = boundaries.get(i).time;
+      int last = bestStartTimes.size() - 1;
+      if (last >= 0 && bestStartTimes.get(last).end() == time) {
+        bestStartTimes.set(last,
+            TimeRange.fromStartEnd(bestStartTimes.get(last).start(), nextTime, false));
+      } else {
+        bestStartTimes.add(TimeRange.fromStartEnd(time, nextTime, false));
+      }
+    }
+
+    // A run of start times [start, end) allows meetings anywhere in [start, end - 1 + length).
+    List<TimeRange> bestTimes = new ArrayList<>();
+    for (TimeRange startTimes : bestStartTimes) {
+      bestTimes.add(TimeRange.fromStartEnd(startTimes.start(), startTimes.end() - 1 + length, false));
+    }
+    return bestTimes;
+  }
+
+  // Adds the boundaries of the start times of meetings that fit in each block.
+  private static void addStartTimes(List<Boundary> boundaries, Collection<TimeRange> freeTimes,
+      int length, int optionalDelta, int mandatoryDelta) {
+    for (TimeRange freeTime : freeTimes) {
+      if (freeTime.duration() >= length) {
+        boundaries.add(new Boundary(freeTime.start(), optionalDelta, mandatoryDelta));
+        boundaries.add(
+            new Boundary(freeTime.end() - length + 1, -optionalDelta, -mandatoryDelta));
+      }
+    }
+  }
+
+  /**
+   * Where the number of free optional or mandatory blocks changes.
+   */
+  private static final class Boundary {
+    private final int time;
+    private final int optionalDelta;
+    private final int mandatoryDelta;
+
+    private Boundary(int time, int optionalDelta, int mandatoryDelta) {
+      this.time = time;
+      this.optionalDelta = optionalDelta;
+      this.mandatoryDelta = mandatoryDelta;
+    }
+  }
+}
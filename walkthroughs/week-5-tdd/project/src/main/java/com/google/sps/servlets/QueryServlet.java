@@ -14,6 +14,8 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.BitsetMeetingQuery;
+import com.google.sps.EventIndex;
 import com.google.sps.Events;
 import com.google.sps.FindMeetingQuery;
 import com.google.sps.MeetingRequest;
@@ -27,19 +29,39 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Finds meeting times for the posted request. The optional engine query parameter picks the
+ * implementation: "index" (the default) for {@link FindMeetingQuery} or "bitset" for
+ * {@link BitsetMeetingQuery}. Both give the same answers.
+ */
 @WebServlet("/query")
 public class QueryServlet extends HttpServlet {
+  // The events never change, so they are indexed once for every query.
+  private static final EventIndex EVENT_INDEX = new EventIndex(Arrays.asList(Events.events));
+  private static final BitsetMeetingQuery BITSET_QUERY =
+      new BitsetMeetingQuery(Arrays.asList(Events.events));
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String engine = request.getParameter("engine");
+    if (engine != null && !engine.equals("index") && !engine.equals("bitset")) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown engine: " + engine);
+      return;
+    }
+
     Gson gson = new Gson();
 
     // Convert the JSON to an instance of MeetingRequest.
     MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
 
     // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+    Collection<TimeRange> answer;
+    if ("bitset".equals(engine)) {
+      answer = BITSET_QUERY.query(meetingRequest);
+    } else {
+      FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+      answer = findMeetingQuery.query(EVENT_INDEX, meetingRequest);
+    }
 
     // Convert the times to JSON
     String jsonResponse = gson.toJson(answer);
@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BitsetMeetingQueryTest {
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final String[] PEOPLE = {PERSON_A, PERSON_B, PERSON_C, "Person D", "Person E"};
+
+  @Test
+  public void eventsSpanningWordBoundaries() {
+    // Events that start and end in the middle of different 64 minute words.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(60, 200, false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(1380, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), 30);
+
+    Collection<TimeRange> actual = new BitsetMeetingQuery(events).query(request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.fromStartEnd(0, 60, false),
+        TimeRange.fromStartEnd(200, 1380, false));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void optionalAttendeeAddsSlots() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(480, 540, false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(600, 660, false), Arrays.asList(PERSON_B)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), 60);
+    request.addOptionalAttendee(PERSON_B);
+
+    Collection<TimeRange> actual = new BitsetMeetingQuery(events).query(request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.fromStartEnd(0, 480, false),
+        TimeRange.fromStartEnd(540, 600, false),
+        TimeRange.fromStartEnd(660, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void matchesFindMeetingQuery() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      List<Event> events = new ArrayList<>();
+      int eventCount = random.nextInt(12);
+      for (int i = 0; i < eventCount; i++) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        int end = start + random.nextInt(TimeRange.END_OF_DAY + 1 - start);
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(PEOPLE[random.nextInt(PEOPLE.length)], PEOPLE[random.nextInt(PEOPLE.length)])));
+      }
+      List<String> attendees = new ArrayList<>();
+      for (String person : PEOPLE) {
+        if (random.nextInt(3) == 0) {
+          attendees.add(person);
+        }
+      }
+      MeetingRequest request = new MeetingRequest(attendees, random.nextInt(240));
+      for (String person : PEOPLE) {
+        if (random.nextInt(3) == 0) {
+          request.addOptionalAttendee(person);
+        }
+      }
+
+      Assert.assertEquals(new ArrayList<>(new FindMeetingQuery().query(events, request)),
+          new ArrayList<>(new BitsetMeetingQuery(events).query(request)));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventIndexTest {
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final Collection<Event> EVENTS = Arrays.asList(
+      new Event("Event 1", TimeRange.fromStartEnd(600, 660, false), Arrays.asList(PERSON_A)),
+      new Event("Event 2", TimeRange.fromStartEnd(480, 540, false), Arrays.asList(PERSON_A, PERSON_B)),
+      new Event("Event 3", TimeRange.fromStartEnd(520, 560, false), Arrays.asList(PERSON_B)),
+      new Event("Event 4", TimeRange.fromStartEnd(560, 600, false), Arrays.asList(PERSON_C)));
+
+  @Test
+  public void eventTimesAreSortedByStart() {
+    EventIndex index = new EventIndex(EVENTS);
+
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.fromStartEnd(480, 540, false), TimeRange.fromStartEnd(600, 660, false)),
+        index.getEventTimes(PERSON_A));
+  }
+
+  @Test
+  public void unknownAttendeeIsNeverBusy() {
+    EventIndex index = new EventIndex(EVENTS);
+
+    Assert.assertEquals(Collections.emptyList(), index.getEventTimes("Person D"));
+    Assert.assertEquals(Collections.emptyList(), index.getBusyTimes(Arrays.asList("Person D")));
+  }
+
+  @Test
+  public void overlappingEventsAreMerged() {
+    EventIndex index = new EventIndex(EVENTS);
+
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.fromStartEnd(480, 560, false), TimeRange.fromStartEnd(600, 660, false)),
+        index.getBusyTimes(Arrays.asList(PERSON_A, PERSON_B)));
+  }
+
+  @Test
+  public void touchingEventsAreMerged() {
+    EventIndex index = new EventIndex(EVENTS);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(480, 660, false)),
+        index.getBusyTimes(Arrays.asList(PERSON_A, PERSON_B, PERSON_C)));
+  }
+}